@@ -26,7 +26,8 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /*
- * This class uses a DOM-based approach to locate Elements that are referenced via an Id.
+ * This class uses a DOM-based approach to locate Elements that are referenced via an Id;
+ * the Ids are resolved from the SecIdIndex of the document.
  */
 
 public class DOMCallbackLookup implements CallbackLookup {
@@ -44,21 +45,7 @@ public class DOMCallbackLookup implements CallbackLookup {
      */
  
     public Element getElement(String id, String valueType, boolean checkMultipleElements) throws Exception {
-
-    	// Try the SOAP Body next
-        Element bodyElement = SecUtil.findBodyElement(doc);
-        if (bodyElement != null) {
-
-        	String cId = bodyElement.getAttributeNS(SecConstants.WSU_NS, "Id");
-            if (cId.equals(id)) {
-                 return bodyElement;
-            }
-        
-        }
-        
-        // Otherwise do a general search
-        return SecUtil.findElementById(doc.getDocumentElement(), id, checkMultipleElements);
-    
+        return SecIdIndex.getIndex(doc).getElement(id, checkMultipleElements);
     }
     
     /*
@@ -2,7 +2,6 @@ package de.kp.wsclient.security;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 /**
  * This is the base class for SecEncryptor, SecDecryptor
@@ -61,16 +60,15 @@ public class SecBase {
      * @return
      */
     protected boolean isSecHeader(Document xmlDoc) {
-    	NodeList nodes = xmlDoc.getElementsByTagNameNS(SecConstants.WSSE_NS, SecConstants.SECURITY);
-	    return (nodes.getLength() == 0) ? false : true;
+	    return (SecEnvelopeIndex.getIndex(xmlDoc).getSecurity() == null) ? false : true;
     }
     
     protected Element getSecHeader(Document xmlDoc) throws Exception {
 
-	    NodeList nodes = xmlDoc.getElementsByTagNameNS(SecConstants.WSSE_NS, SecConstants.SECURITY);
-	    if (nodes.getLength() == 0) return createSecHeader(xmlDoc);
+    	Element secHeader = SecEnvelopeIndex.getIndex(xmlDoc).getSecurity();
+	    if (secHeader == null) return createSecHeader(xmlDoc);
 
-        return (Element) nodes.item(0);
+        return secHeader;
 
     }
     
@@ -90,18 +88,14 @@ public class SecBase {
 	
     /**
      * This method retrieves a soap:Header element from a 
-     * W3C DOM document.
+     * W3C DOM document; SOAP 1.1 and SOAP 1.2 envelopes are
+     * distinguished by the namespace of the envelope.
      * 
      * @param xmlDoc
      * @return
      */
     protected Element getSOAPHeader(Document xmlDoc) {
-
-	    NodeList nodes = xmlDoc.getElementsByTagNameNS(SecConstants.URI_SOAP12_ENV, SecConstants.ELEM_HEADER);
-	    if (nodes.getLength() == 0) return null;
-
-        return (Element) nodes.item(0);
-
+    	return SecEnvelopeIndex.getIndex(xmlDoc).getHeader();
     }
 
     /**
@@ -112,12 +106,7 @@ public class SecBase {
      * @return
      */
     protected Element getSOAPBody(Document xmlDoc) {
-
-	    NodeList nodes = xmlDoc.getElementsByTagNameNS(SecConstants.URI_SOAP12_ENV, SecConstants.ELEM_BODY);
-	    if (nodes.getLength() == 0) return null;
-
-        return (Element) nodes.item(0);
-
+    	return SecEnvelopeIndex.getIndex(xmlDoc).getBody();
     }
 
 }
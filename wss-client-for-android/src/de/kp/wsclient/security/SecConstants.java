@@ -66,6 +66,8 @@ public class SecConstants {
 
     // tags
     public static final String BINARY_TOKEN_LN 			= "BinarySecurityToken";
+    public static final String ENCRYPTED_KEY_LN 		= "EncryptedKey";
+    public static final String KEY_IDENTIFIER 			= "KeyIdentifier";
     public static final String KEYINFO_LN 				= "KeyInfo";
     public static final String REFERENCE                = "Reference";
 	public static final String SECURITY_TOKEN_REFERENCE = "SecurityTokenReference";
@@ -94,6 +96,8 @@ public class SecConstants {
     public static final String C14N_EXCL_OMIT_COMMENTS = "http://www.w3.org/2001/10/xml-exc-c14n#";
 
     public static final String WSS_ENC_KEY_VALUE_TYPE = SOAP_MESSAGE_NS11 + "#" + ENC_KEY_VALUE_TYPE;
+    public static final String WSS_ENC_KEY_SHA1_VALUE_TYPE = SOAP_MESSAGE_NS11 + "#" + ENC_KEY_SHA1_URI;
+    public static final String WSS_THUMBPRINT_VALUE_TYPE = SOAP_MESSAGE_NS11 + "#" + THUMBPRINT;
 
     // constants from WSS4J
     public static final int BST_DIRECT_REFERENCE     	  = 1;
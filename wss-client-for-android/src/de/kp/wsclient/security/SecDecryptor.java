@@ -6,6 +6,9 @@ import java.util.List;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.w3c.dom.Attr;
@@ -13,7 +16,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.Text;
 
 public class SecDecryptor extends SecBase {
 
@@ -82,9 +84,6 @@ public class SecDecryptor extends SecBase {
             throw new Exception("[SecDecryptor] Unsupported algorithm.");
         }
 
-        Cipher cipher = SecUtil.getCipherInstance(encAlgo);
-        cipher.init(Cipher.UNWRAP_MODE, crypto.getPrivateKey());
-
         // Now lookup CipherValue.
         Element tmp = SecUtil.getDirectChildElement(encKey, "CipherData", SecConstants.ENC_NS);
         Element xencCipherValue = null;
@@ -98,6 +97,19 @@ public class SecDecryptor extends SecBase {
         }
             
         List<String> dataRefURIs = getDataRefURIs(encKey);
+        if (dataRefURIs.isEmpty()) return this.xmlDoc;
+        
+        // the content encryption algorithm of the (first) referenced
+        // xenc:EncryptedData determines the algorithm of the key
+        String symEncAlgo = getEncAlgo(findEncryptedDataElement(dataRefURIs.get(0)));
+        if (symEncAlgo == null) {
+            throw new Exception("[SecDecryptor] Unsupported algorithm.");
+        }
+
+        String keyAlgorithm = SecUtil.getKeyAlgorithm(symEncAlgo);
+        if (keyAlgorithm == null) {
+            throw new Exception("[SecDecryptor] Unsupported algorithm.");
+        }
 	            
         byte[] encryptedEphemeralKey = null;
         SecretKey symmetricKey = null;
@@ -105,9 +117,21 @@ public class SecDecryptor extends SecBase {
         try {
             encryptedEphemeralKey = getDecodedBase64EncodedData(xencCipherValue);      
             
-            String keyAlgorithm = SecUtil.getKeyAlgorithm(SecConstants.AES_128);
-            symmetricKey = (SecretKey)cipher.unwrap(encryptedEphemeralKey, keyAlgorithm, Cipher.SECRET_KEY);
-            
+            // a key, that has been unwrapped before, is taken from
+            // the SecKeyCache, if enabled
+            symmetricKey = SecKeyCache.getDecryptionKey(encryptedEphemeralKey, crypto.getPrivateKey());
+            if (symmetricKey == null) {
+
+            	Cipher cipher = SecUtil.getCipherInstance(encAlgo);
+            	cipher.init(Cipher.UNWRAP_MODE, crypto.getPrivateKey());
+
+            	symmetricKey = (SecretKey)cipher.unwrap(encryptedEphemeralKey, keyAlgorithm, Cipher.SECRET_KEY);
+            	SecKeyCache.putDecryptionKey(encryptedEphemeralKey, crypto.getPrivateKey(), symmetricKey);
+            	
+            } else if (keyAlgorithm.equals(symmetricKey.getAlgorithm()) == false) {
+            	symmetricKey = new SecretKeySpec(symmetricKey.getEncoded(), keyAlgorithm);
+            	
+            }
             
         } catch (IllegalStateException ex) {
             throw new Exception("[SecDecrytor] Check failed.");
@@ -159,6 +183,16 @@ public class SecDecryptor extends SecBase {
 
         // Prepare the SecretKey object to decrypt EncryptedData
         String symEncAlgo = getEncAlgo(encryptedDataElement);
+        if (symEncAlgo == null) {
+            throw new Exception("[SecDecryptor] Unsupported algorithm.");
+        }
+        
+        // the length of the unwrapped key must match the algorithm, 
+        // e.g. 256 bits for AES-256-GCM
+        int keyLength = JCEMapper.getKeyLengthFromURI(symEncAlgo);
+        if (keyLength > 0 && symmetricKey.getEncoded().length * 8 != keyLength) {
+            throw new Exception("[SecDecryptor] Invalid key length.");
+        }
 
         return decryptEncryptedData(dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo);
 
@@ -171,9 +205,7 @@ public class SecDecryptor extends SecBase {
 
 	private Element findEncryptedDataElement(String dataRefURI) throws Exception {
 		
-        DOMCallbackLookup callbackLookup = new DOMCallbackLookup(this.xmlDoc);
-
-        Element encryptedDataElement = callbackLookup.getElement(dataRefURI, null, true);
+        Element encryptedDataElement = SecIdIndex.getIndex(this.xmlDoc).getElement(dataRefURI, true);
         if (encryptedDataElement == null) {
             throw new Exception("[SecDecryptor] Invalid security.");
         }
@@ -225,6 +257,11 @@ public class SecDecryptor extends SecBase {
             parent = encData.getParentNode();
         }
         
+        // the identifiers of the encrypted subtree are replaced
+        // by those of the decrypted one
+        SecIdIndex index = SecIdIndex.getIndex(this.xmlDoc);
+        index.remove(encData, content);
+        
         try {
             xmlCipher.doFinal(this.xmlDoc, encData, content);
             
@@ -237,7 +274,11 @@ public class SecDecryptor extends SecBase {
                 
             Node decryptedHeader = parent.getFirstChild();
             Node soapHeader = parent.getParentNode();
+            
+            index.remove((Element)parent, false);
             soapHeader.replaceChild(decryptedHeader, parent);
+            
+            if (decryptedHeader.getNodeType() == Node.ELEMENT_NODE) index.add((Element)decryptedHeader, false);
 
             dataRef.setProtectedNode(decryptedHeader);
             dataRef.setXpath(getXPath(decryptedHeader));
@@ -245,6 +286,7 @@ public class SecDecryptor extends SecBase {
         } else if (content) {
         	
         	// this is the default path 
+            index.add(encData, true);
             dataRef.setProtectedNode(encData);
             dataRef.setXpath(getXPath(encData));
         
@@ -258,6 +300,8 @@ public class SecDecryptor extends SecBase {
                 decryptedNode = previousSibling.getNextSibling();
             }
             
+            if (decryptedNode != null && decryptedNode.getNodeType() == Node.ELEMENT_NODE) index.add((Element)decryptedNode, false);
+
             if (decryptedNode != null) dataRef.setProtectedNode(decryptedNode);            
             dataRef.setXpath(getXPath(decryptedNode));
         }
@@ -308,20 +352,8 @@ public class SecDecryptor extends SecBase {
 	}
 
     private static byte[] getDecodedBase64EncodedData(Element element) throws Exception {
-        
-    	StringBuilder sb = new StringBuilder();
-        Node node = element.getFirstChild();
-        
-        while (node != null) {
-            if (Node.TEXT_NODE == node.getNodeType()) {
-                sb.append(((Text) node).getData());
-            }
-            node = node.getNextSibling();
-        }
-        
-        String encodedData = sb.toString();
-        return org.apache.xml.security.utils.Base64.decode(encodedData);
-    
+        // the text nodes are decoded directly, without joining them
+        return org.apache.xml.security.utils.Base64.decode(element);
     }
     
     public String getXPath(Node decryptedNode) {
@@ -0,0 +1,109 @@
+package de.kp.wsclient.security;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class provides MessageDigest instances for SHA-1, SHA-256 and
+ * SHA-512 (or any other digest algorithm of the installed providers);
+ * each thread keeps its own instance per algorithm, i.e. no digest
+ * is shared between threads and no lock is held while it is computed.
+ *
+ * The digests computed and the MessageDigest instances created are
+ * counted for monitoring purposes; under parallel load the number of
+ * instances is bounded by the number of threads and algorithms.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecDigestProvider {
+
+	public static final String SHA1   = "SHA-1";
+	public static final String SHA256 = "SHA-256";
+	public static final String SHA512 = "SHA-512";
+
+	private static ThreadLocal<Map<String,MessageDigest>> digests = new ThreadLocal<Map<String,MessageDigest>>() {
+
+		protected Map<String,MessageDigest> initialValue() {
+			return new HashMap<String,MessageDigest>();
+		}
+
+	};
+
+	private static AtomicLong computed  = new AtomicLong();
+	private static AtomicLong instances = new AtomicLong();
+
+	private SecDigestProvider() {
+	}
+
+	/**
+	 * This method returns the MessageDigest of the calling thread for
+	 * the algorithm provided; the digest is reset and must not be
+	 * handed to another thread.
+	 *
+	 * @param algorithm the JCA name of the algorithm, e.g. SHA-256
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static MessageDigest getDigest(String algorithm) throws NoSuchAlgorithmException {
+
+		Map<String,MessageDigest> digestMap = digests.get();
+
+		MessageDigest digest = digestMap.get(algorithm);
+		if (digest == null) {
+
+			digest = MessageDigest.getInstance(algorithm);
+			digestMap.put(algorithm, digest);
+
+			instances.incrementAndGet();
+
+		} else {
+			digest.reset();
+
+		}
+
+		return digest;
+
+	}
+
+	/**
+	 * @param algorithm the JCA name of the algorithm, e.g. SHA-1
+	 * @param data
+	 * @return the digest of the data provided
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static byte[] digest(String algorithm, byte[] data) throws NoSuchAlgorithmException {
+
+		// digest() resets the message digest
+		byte[] result = getDigest(algorithm).digest(data);
+		computed.incrementAndGet();
+
+		return result;
+
+	}
+
+	/**
+	 * @return the number of digests computed by {@link #digest(String, byte[])}
+	 */
+	public static long getDigests() {
+		return computed.get();
+	}
+
+	/**
+	 * @return the number of MessageDigest instances created
+	 */
+	public static long getInstances() {
+		return instances.get();
+	}
+
+	public static void resetStatistics() {
+
+		computed.set(0);
+		instances.set(0);
+
+	}
+
+}
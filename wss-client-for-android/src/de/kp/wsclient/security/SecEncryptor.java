@@ -1,19 +1,13 @@
 package de.kp.wsclient.security;
 
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.spec.MGF1ParameterSpec;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.OAEPParameterSpec;
-import javax.crypto.spec.PSource;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.EncryptedData;
 import org.apache.xml.security.encryption.XMLCipher;
@@ -76,6 +70,39 @@ public class SecEncryptor extends SecBase {
 		this.crypto = crypto;
 	}
 
+	/**
+	 * This method determines the algorithm of the content encryption;
+	 * AES-128/192/256 in CBC mode (SecConstants.AES_128, AES_192, AES_256)
+	 * and in GCM mode (SecConstants.AES_128_GCM, AES_192_GCM, AES_256_GCM)
+	 * are supported; GCM also protects the integrity of the content.
+	 * 
+	 * @param symEncAlgo
+	 * @throws Exception
+	 */
+	public void setSymmetricEncAlgorithm(String symEncAlgo) throws Exception {
+		
+		if (SecUtil.isSupportedEncAlgorithm(symEncAlgo) == false) throw new Exception("[SecEncryptor] Unsupported algorithm: " + symEncAlgo);
+		this.symEncAlgo = symEncAlgo;
+		
+	}
+
+	public String getSymmetricEncAlgorithm() {
+		return this.symEncAlgo;
+	}
+	
+	/**
+	 * @param keyEncAlgo SecConstants.KEYTRANSPORT_RSA15 (default) or SecConstants.KEYTRANSPORT_RSAOEP
+	 * @throws Exception
+	 */
+	public void setKeyEncAlgorithm(String keyEncAlgo) throws Exception {
+		
+		if (SecConstants.KEYTRANSPORT_RSA15.equals(keyEncAlgo) == false && SecConstants.KEYTRANSPORT_RSAOEP.equals(keyEncAlgo) == false)
+			throw new Exception("[SecEncryptor] Unsupported algorithm: " + keyEncAlgo);
+		
+		this.keyEncAlgo = keyEncAlgo;
+		
+	}
+
 
 	/**
      * This method builds the SOAP envelope with encrypted Body and adds 
@@ -165,48 +192,28 @@ public class SecEncryptor extends SecBase {
 		// the subsequent part of code is adapted from the 'prepare'
 		// method of WSS4J (1.6.4) WSSecEncrypt
 	        
-		KeyGenerator keyGen = getKeyGenerator();
-		this.symmetricKey = keyGen.generateKey();            
-	    
-		/*
-		 * Encrypt the symmetric key data and prepare the EncryptedKey element
-		 * This method does the most work for to prepare the EncryptedKey element.
-		 */
+		// an ephemeral key, that has already been wrapped for the
+		// recipient, is reused, if the SecKeyCache is enabled
+		SecKeyCache.EncryptionKey cachedKey = SecKeyCache.getEncryptionKey(this.crypto.getPublicKey(), this.symEncAlgo, this.keyEncAlgo);
+		if (cachedKey != null) {
+			
+			this.symmetricKey = cachedKey.secretKey;
+			this.encryptedSymmetricKey = cachedKey.encryptedKey;
+			
+		} else {
 		
-		Cipher cipher = getCipherInstance(this.keyEncAlgo);
-	    try {
-	    	
-	        OAEPParameterSpec oaepParameterSpec = null;
-	        
-	        // the default encoding algorithm is SecConstants.KEYTRANSPORT_RSA15
-	        if (SecConstants.KEYTRANSPORT_RSAOEP.equals(this.keyEncAlgo)) {
-	            oaepParameterSpec = new OAEPParameterSpec("SHA-1", "MGF1", new MGF1ParameterSpec("SHA-1"), PSource.PSpecified.DEFAULT);
-	        }
-	        
-	        if (oaepParameterSpec == null) {
-	        	// this is the default way to initialize the Cipher instance
-	            cipher.init(Cipher.WRAP_MODE, this.crypto.getPublicKey());
-	        
-	        } else {
-	            cipher.init(Cipher.WRAP_MODE, this.crypto.getPublicKey(), oaepParameterSpec);
-
-	        }
-
-	        this.encryptedSymmetricKey = cipher.wrap(this.symmetricKey);
-
-	    } catch (InvalidKeyException e) {
-	        throw new Exception("Encryption failed: " + e.getMessage());
-	        
-	    } catch (InvalidAlgorithmParameterException e) {
-	        throw new Exception("Encryption failed: " + e.getMessage());
-	    
-	    } catch (IllegalStateException e) {
-	        throw new Exception("Encryption failed: " + e.getMessage());
-	        
-	    } catch (IllegalBlockSizeException e) {
-	        throw new Exception("Encryption failed: " + e.getMessage());
-
-	    }
+			KeyGenerator keyGen = getKeyGenerator();
+			this.symmetricKey = keyGen.generateKey();            
+		    
+			/*
+			 * Encrypt the symmetric key data and prepare the EncryptedKey element
+			 * This method does the most work for to prepare the EncryptedKey element.
+			 */
+			
+			this.encryptedSymmetricKey = SecUtil.wrapKey(this.symmetricKey, this.keyEncAlgo, this.crypto.getPublicKey());
+			SecKeyCache.putEncryptionKey(this.crypto.getPublicKey(), this.symEncAlgo, this.keyEncAlgo, this.symmetricKey, this.encryptedSymmetricKey);
+		
+		}
 	    
 	    //
 	    // Now we need to setup the EncryptedKey header block 1) create a
@@ -316,12 +323,13 @@ public class SecEncryptor extends SecBase {
         }
 
         List<String> encDataRef = new ArrayList<String>();
+        DOMCallbackLookup callbackLookup = new DOMCallbackLookup(this.xmlDoc);
+        
         for (int part = 0; part < references.size(); part++) {
 
         	SecEncPart encPart = references.get(part);
             
             // Get the data to encrypt.
-        	DOMCallbackLookup callbackLookup = new DOMCallbackLookup(this.xmlDoc);
             List<Element> elementsToEncrypt = SecUtil.findElements(encPart, callbackLookup, this.xmlDoc);
             
             if (elementsToEncrypt == null || elementsToEncrypt.size() == 0) {
@@ -376,7 +384,14 @@ public class SecEncryptor extends SecBase {
             encData.setId(xencEncryptedDataId);
             encData.setKeyInfo(this.keyInfo);
             
+            // the identifiers of the content are replaced by
+            // the Id of the xenc:EncryptedData
+            SecIdIndex index = SecIdIndex.getIndex(this.xmlDoc);
+            index.remove(elementToEncrypt, content);
+            
             xmlCipher.doFinal(this.xmlDoc, elementToEncrypt, content);
+            index.add(elementToEncrypt, content);
+            
             return xencEncryptedDataId;
         
         } catch (Exception ex) {
@@ -0,0 +1,270 @@
+package de.kp.wsclient.security;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.xml.security.utils.Constants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * This class indexes the well-known elements of a SOAP envelope, i.e.
+ * soap:Header, soap:Body, wsse:Security, ds:Signature, the
+ * wsse:BinarySecurityToken elements by their wsu:Id and the
+ * xenc:EncryptedKey elements by their Id; the index is
+ * built in a single pass over the envelope and the security header,
+ * and is attached to the W3C DOM document as user data.
+ *
+ * The security processors mutate the envelope; therefore each element
+ * reference is checked against its parent before it is returned, and
+ * a reference, that is no longer valid, is looked up again. As these
+ * lookups are restricted to the envelope and header children, the cost
+ * does not depend on the size of the body.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecEnvelopeIndex {
+
+	private static final String INDEX_KEY = "de.kp.wsclient.security.SecEnvelopeIndex";
+
+	private Document xmlDoc;
+
+	private Element envelope;
+
+	private Element header;
+	private Element body;
+
+	private Element security;
+	private Element signature;
+
+	// wsse:BinarySecurityToken elements by wsu:Id
+	private Map<String,Element> tokens = new HashMap<String,Element>();
+
+	// xenc:EncryptedKey elements by Id
+	private Map<String,Element> encryptedKeys = new HashMap<String,Element>();
+
+	private SecEnvelopeIndex(Document xmlDoc) {
+		this.xmlDoc = xmlDoc;
+		build();
+	}
+
+	/**
+	 * This method returns the index of the W3C DOM document provided;
+	 * the index is built with the first invocation for a certain document.
+	 *
+	 * @param xmlDoc
+	 * @return
+	 */
+	public static SecEnvelopeIndex getIndex(Document xmlDoc) {
+
+		SecEnvelopeIndex index = (SecEnvelopeIndex)xmlDoc.getUserData(INDEX_KEY);
+		if (index == null) {
+
+			index = new SecEnvelopeIndex(xmlDoc);
+			xmlDoc.setUserData(INDEX_KEY, index, null);
+
+		} else if (index.envelope != xmlDoc.getDocumentElement()) {
+			// the envelope has been replaced
+			index.build();
+
+		}
+
+		return index;
+
+	}
+
+	/**
+	 * This method discards all element references; it is invoked,
+	 * if the envelope or the security header is restructured.
+	 */
+	public void invalidate() {
+		build();
+	}
+
+	public Element getEnvelope() {
+		return envelope;
+	}
+
+	public Element getHeader() {
+
+		if (isChild(header, envelope) == false)
+			header = SecUtil.getSOAPElement(xmlDoc, SecConstants.ELEM_HEADER);
+
+		return header;
+
+	}
+
+	public Element getBody() {
+
+		if (isChild(body, envelope) == false)
+			body = SecUtil.getSOAPElement(xmlDoc, SecConstants.ELEM_BODY);
+
+		return body;
+
+	}
+
+	/**
+	 * @return the wsse:Security element of the SOAP header, or null
+	 */
+	public Element getSecurity() {
+
+		Element header = getHeader();
+		if (isChild(security, header) == false) indexSecurity(header);
+
+		return security;
+
+	}
+
+	/**
+	 * @return the ds:Signature element of the security header, or null
+	 */
+	public Element getSignature() {
+
+		Element security = getSecurity();
+		if (isChild(signature, security) == false) indexTokens(security);
+
+		return signature;
+
+	}
+
+	/**
+	 * @param tokenId
+	 * @return the wsse:BinarySecurityToken with the wsu:Id provided, or null
+	 */
+	public Element getBinarySecurityToken(String tokenId) {
+
+		if (tokenId == null) return null;
+
+		Element security = getSecurity();
+
+		Element token = tokens.get(tokenId);
+		if (isChild(token, security) == false || tokenId.equals(token.getAttributeNS(SecConstants.WSU_NS, "Id")) == false) {
+
+			indexTokens(security);
+			token = tokens.get(tokenId);
+
+		}
+
+		return token;
+
+	}
+
+	/**
+	 * @param keyId
+	 * @return the xenc:EncryptedKey of the security header with the Id provided, or null
+	 */
+	public Element getEncryptedKey(String keyId) {
+
+		if (keyId == null) return null;
+
+		Element security = getSecurity();
+
+		Element encryptedKey = encryptedKeys.get(keyId);
+		if (isChild(encryptedKey, security) == false || keyId.equals(encryptedKey.getAttributeNS(null, "Id")) == false) {
+
+			indexTokens(security);
+			encryptedKey = encryptedKeys.get(keyId);
+
+		}
+
+		return encryptedKey;
+
+	}
+
+	/**
+	 * This method walks the envelope and the security header once.
+	 */
+	private void build() {
+
+		envelope = xmlDoc.getDocumentElement();
+
+		header = null;
+		body   = null;
+
+		if (envelope != null) {
+
+			String ns = envelope.getNamespaceURI();
+			for (Node child = envelope.getFirstChild(); child != null; child = child.getNextSibling()) {
+
+				if (child.getNodeType() != Node.ELEMENT_NODE || ns == null || ns.equals(child.getNamespaceURI()) == false) continue;
+
+				String ln = child.getLocalName();
+				if (header == null && SecConstants.ELEM_HEADER.equals(ln)) {
+					header = (Element)child;
+
+				} else if (body == null && SecConstants.ELEM_BODY.equals(ln)) {
+					body = (Element)child;
+
+				}
+
+			}
+
+		}
+
+		indexSecurity(header);
+
+	}
+
+	private void indexSecurity(Element header) {
+
+		security = getChild(header, SecConstants.WSSE_NS, SecConstants.SECURITY);
+		indexTokens(security);
+
+	}
+
+	private void indexTokens(Element security) {
+
+		signature = null;
+		tokens.clear();
+		encryptedKeys.clear();
+
+		if (security == null) return;
+
+		for (Node child = security.getFirstChild(); child != null; child = child.getNextSibling()) {
+
+			if (child.getNodeType() != Node.ELEMENT_NODE) continue;
+
+			String ns = child.getNamespaceURI();
+			String ln = child.getLocalName();
+
+			if (signature == null && Constants.SignatureSpecNS.equals(ns) && SecConstants.SIGNATURE.equals(ln)) {
+				signature = (Element)child;
+
+			} else if (SecConstants.WSSE_NS.equals(ns) && SecConstants.BINARY_TOKEN_LN.equals(ln)) {
+
+				Element token = (Element)child;
+				if (token.hasAttributeNS(SecConstants.WSU_NS, "Id")) tokens.put(token.getAttributeNS(SecConstants.WSU_NS, "Id"), token);
+
+			} else if (SecConstants.ENC_NS.equals(ns) && SecConstants.ENCRYPTED_KEY_LN.equals(ln)) {
+
+				Element encryptedKey = (Element)child;
+				if (encryptedKey.hasAttributeNS(null, "Id")) encryptedKeys.put(encryptedKey.getAttributeNS(null, "Id"), encryptedKey);
+
+			}
+
+		}
+
+	}
+
+	private static Element getChild(Element parent, String ns, String localName) {
+
+		if (parent == null) return null;
+
+		for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+
+			if (child.getNodeType() != Node.ELEMENT_NODE) continue;
+			if (localName.equals(child.getLocalName()) && ns.equals(child.getNamespaceURI())) return (Element)child;
+
+		}
+
+		return null;
+
+	}
+
+	private static boolean isChild(Element child, Element parent) {
+		return (child != null) && (parent != null) && (child.getParentNode() == parent);
+	}
+
+}
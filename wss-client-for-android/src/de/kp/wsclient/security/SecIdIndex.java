@@ -0,0 +1,286 @@
+package de.kp.wsclient.security;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.xml.security.utils.IdResolver;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * This class indexes the elements of a W3C DOM document by their
+ * identifier, i.e. the wsu:Id, the Id attribute and the id attribute
+ * of the soap:Body; the index is built in a single pass over the
+ * document and is attached to the document as user data.
+ *
+ * Each identifier is registered with the document by means of the
+ * IdResolver; this enables the Apache Santuario framework to resolve
+ * same-document references by Document.getElementById.
+ *
+ * Identifiers, that are assigned to more than one element, are
+ * recorded; a lookup, that checks for multiple elements, returns null
+ * for such an identifier, as this can be used to get around the
+ * signature checking (XML signature wrapping).
+ *
+ * The index is updated for the subtrees, that are replaced by the
+ * encryption and decryption of a message; in addition each element
+ * reference is checked before it is returned, and the index is built
+ * again, if a reference is no longer valid or an identifier is not
+ * found.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecIdIndex {
+
+	private static final String INDEX_KEY = "de.kp.wsclient.security.SecIdIndex";
+
+	private Document xmlDoc;
+	private Element root;
+
+	// the first element in document order by identifier
+	private Map<String,Element> elements = new HashMap<String,Element>();
+
+	// identifiers, that are assigned to more than one element
+	private Set<String> duplicates = new HashSet<String>();
+
+	// indicates, that an element with a duplicate identifier has been removed
+	private boolean stale = false;
+
+	private SecIdIndex(Document xmlDoc) {
+		this.xmlDoc = xmlDoc;
+		build();
+	}
+
+	/**
+	 * This method returns the index of the W3C DOM document provided;
+	 * the index is built with the first invocation for a certain document.
+	 *
+	 * @param xmlDoc
+	 * @return
+	 */
+	public static SecIdIndex getIndex(Document xmlDoc) {
+
+		SecIdIndex index = (SecIdIndex)xmlDoc.getUserData(INDEX_KEY);
+		if (index == null) {
+
+			index = new SecIdIndex(xmlDoc);
+			xmlDoc.setUserData(INDEX_KEY, index, null);
+
+		} else if (index.root != xmlDoc.getDocumentElement()) {
+			// the document element has been replaced
+			index.build();
+
+		}
+
+		return index;
+
+	}
+
+	/**
+	 * This method discards all element references and walks
+	 * the document again.
+	 */
+	public void invalidate() {
+		build();
+	}
+
+	/**
+	 * @param reference the identifier or a same-document reference, e.g. #id-1
+	 * @param checkMultipleElements if true, null is returned for an
+	 * identifier, that is assigned to more than one element
+	 * @return the element with the identifier provided, or null
+	 */
+	public Element getElement(String reference, boolean checkMultipleElements) {
+
+		if (reference == null) return null;
+
+		String id = SecUtil.getIDFromReference(reference);
+		if (id == null) return null;
+
+		if (stale) build();
+
+		Element element = elements.get(id);
+		if (isValid(element, id) == false) {
+
+			build();
+			element = elements.get(id);
+
+		}
+
+		if (checkMultipleElements && duplicates.contains(id)) return null;
+		return element;
+
+	}
+
+	/**
+	 * This method registers the identifiers of an element and its
+	 * descendants, or of the descendants only, if content is true.
+	 * It is invoked after a subtree has been encrypted or decrypted.
+	 *
+	 * @param element
+	 * @param content
+	 */
+	public void add(Element element, boolean content) {
+		update(element, content, true);
+	}
+
+	/**
+	 * This method removes the identifiers of an element and its
+	 * descendants, or of the descendants only, if content is true.
+	 * It is invoked before a subtree is encrypted or decrypted.
+	 *
+	 * @param element
+	 * @param content
+	 */
+	public void remove(Element element, boolean content) {
+		update(element, content, false);
+	}
+
+	private void update(Element element, boolean content, boolean register) {
+
+		if (element == null) return;
+
+		if (content == false) {
+			walk(element, register);
+
+		} else {
+
+			for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (child.getNodeType() == Node.ELEMENT_NODE) walk(child, register);
+			}
+
+		}
+
+	}
+
+	/**
+	 * This method walks the document once.
+	 */
+	private void build() {
+
+		root = xmlDoc.getDocumentElement();
+
+		elements.clear();
+		duplicates.clear();
+
+		stale = false;
+		if (root != null) walk(root, true);
+
+	}
+
+	/*
+	 * Depth-first walk of the subtree below the start node
+	 */
+	private void walk(Node start, boolean register) {
+
+		Node node = start;
+		while (node != null) {
+
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+
+				if (register) {
+					register((Element)node);
+
+				} else {
+					unregister((Element)node);
+
+				}
+
+			}
+
+			// first child, next sibling or the next sibling
+			// of the nearest ancestor below the start node
+			Node next = node.getFirstChild();
+			while (next == null && node != start) {
+
+				next = node.getNextSibling();
+				node = node.getParentNode();
+
+			}
+
+			node = next;
+
+		}
+
+	}
+
+	private void register(Element element) {
+
+		register(element, element.getAttributeNodeNS(SecConstants.WSU_NS, "Id"));
+		register(element, element.getAttributeNodeNS(null, "Id"));
+
+		// the soap:Body of a SOAPMessage
+		if (isBody(element)) register(element, element.getAttributeNodeNS(null, "id"));
+
+	}
+
+	private void register(Element element, Attr attr) {
+
+		if (attr == null || attr.getValue().length() == 0) return;
+
+		IdResolver.registerElementById(element, attr);
+
+		String id = attr.getValue();
+
+		Element registered = elements.get(id);
+		if (registered == null) {
+			elements.put(id, element);
+
+		} else if (registered != element) {
+			duplicates.add(id);
+
+		}
+
+	}
+
+	private void unregister(Element element) {
+
+		unregister(element, element.getAttributeNS(SecConstants.WSU_NS, "Id"));
+		unregister(element, element.getAttributeNS(null, "Id"));
+
+		if (isBody(element)) unregister(element, element.getAttributeNS(null, "id"));
+
+	}
+
+	private void unregister(Element element, String id) {
+
+		if (id.length() == 0) return;
+
+		// the remaining elements with this identifier
+		// are determined with the next lookup
+		if (duplicates.contains(id)) stale = true;
+		if (elements.get(id) == element) elements.remove(id);
+
+	}
+
+	/*
+	 * An element reference is valid, if the element still carries
+	 * the identifier and is part of the document
+	 */
+	private boolean isValid(Element element, String id) {
+
+		if (element == null) return false;
+
+		if (id.equals(element.getAttributeNS(SecConstants.WSU_NS, "Id")) == false && id.equals(element.getAttributeNS(null, "Id")) == false) {
+			if (isBody(element) == false || id.equals(element.getAttributeNS(null, "id")) == false) return false;
+		}
+
+		Node node = element;
+		while (node.getParentNode() != null) {
+			node = node.getParentNode();
+		}
+
+		return (node == xmlDoc);
+
+	}
+
+	private boolean isBody(Element element) {
+		return (element.getParentNode() == root) && SecConstants.ELEM_BODY.equals(element.getLocalName());
+	}
+
+}
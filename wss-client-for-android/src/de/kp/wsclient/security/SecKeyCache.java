@@ -0,0 +1,290 @@
+package de.kp.wsclient.security;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.xml.security.utils.Base64;
+
+import de.kp.wsclient.util.LRUCache;
+
+/**
+ * This class caches ephemeral (symmetric) keys to avoid an RSA
+ * operation per encrypted message: on the encryption side, a key
+ * and its wrapped representation are reused per recipient for a
+ * bounded number of messages and a bounded time window; on the
+ * decryption side, unwrapped keys are kept by a SHA-256 digest of
+ * the xenc:CipherValue of the xenc:EncryptedKey.
+ *
+ * The cache is disabled by default; key material, that leaves the
+ * cache, is overwritten with zeros.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecKeyCache {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	public static final int DEFAULT_MAX_MESSAGES  = 100;
+	public static final long DEFAULT_KEY_LIFETIME = 5 * 60 * 1000L;
+
+	private static volatile boolean enabled = false;
+
+	private static volatile int maxMessages  = DEFAULT_MAX_MESSAGES;
+	private static volatile long keyLifetime = DEFAULT_KEY_LIFETIME;
+
+	private static LRUCache<String,Entry> encKeys = createCache();
+	private static LRUCache<String,Entry> decKeys = createCache();
+
+	/*
+	 * A cached key together with the key it is wrapped with (encryption)
+	 * or unwrapped with (decryption)
+	 */
+	static class Entry {
+
+		final SecWipeableKey secretKey;
+
+		final byte[] encryptedKey;
+		final Object boundKey;
+
+		final long expires;
+		int usage;
+
+		Entry(SecWipeableKey secretKey, byte[] encryptedKey, Object boundKey) {
+
+			this.secretKey    = secretKey;
+			this.encryptedKey = encryptedKey;
+
+			this.boundKey = boundKey;
+			this.expires  = System.currentTimeMillis() + keyLifetime;
+
+		}
+
+		boolean isValid(Object key) {
+			return (boundKey.equals(key)) && (secretKey.isDestroyed() == false) && (System.currentTimeMillis() < expires);
+		}
+
+	}
+
+	/*
+	 * A copy of a cached ephemeral key and its wrapped representation
+	 */
+	static class EncryptionKey {
+
+		final SecretKey secretKey;
+		final byte[] encryptedKey;
+
+		EncryptionKey(SecretKey secretKey, byte[] encryptedKey) {
+
+			this.secretKey    = secretKey;
+			this.encryptedKey = encryptedKey;
+
+		}
+
+	}
+
+	private SecKeyCache() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled if false, all cached keys are wiped
+	 */
+	public static void setEnabled(boolean enabled) {
+
+		SecKeyCache.enabled = enabled;
+		if (enabled == false) clear();
+
+	}
+
+	/**
+	 * @param maxMessages the number of messages, an ephemeral
+	 * key is used to encrypt
+	 */
+	public static void setMaxMessages(int maxMessages) {
+
+		if (maxMessages < 1) throw new IllegalArgumentException("[SecKeyCache] Invalid number of messages.");
+		SecKeyCache.maxMessages = maxMessages;
+
+	}
+
+	public static int getMaxMessages() {
+		return maxMessages;
+	}
+
+	/**
+	 * @param keyLifetime the time window in milliseconds, a cached key is used
+	 */
+	public static void setKeyLifetime(long keyLifetime) {
+
+		if (keyLifetime < 1) throw new IllegalArgumentException("[SecKeyCache] Invalid key lifetime.");
+		SecKeyCache.keyLifetime = keyLifetime;
+
+	}
+
+	public static long getKeyLifetime() {
+		return keyLifetime;
+	}
+
+	/**
+	 * This method wipes all cached keys.
+	 */
+	public static void clear() {
+
+		encKeys.clear();
+		decKeys.clear();
+
+	}
+
+	/**
+	 * @return the cache of ephemeral keys for encryption
+	 */
+	public static LRUCache<String,?> getEncryptionCache() {
+		return encKeys;
+	}
+
+	/**
+	 * @return the cache of unwrapped keys for decryption
+	 */
+	public static LRUCache<String,?> getDecryptionCache() {
+		return decKeys;
+	}
+
+	/**
+	 * This method returns a cached ephemeral key to encrypt a message
+	 * for the recipient provided, or null.
+	 *
+	 * @param publicKey
+	 * @param symEncAlgo
+	 * @param keyEncAlgo
+	 * @return
+	 * @throws Exception
+	 */
+	static EncryptionKey getEncryptionKey(PublicKey publicKey, String symEncAlgo, String keyEncAlgo) throws Exception {
+
+		if (enabled == false) return null;
+
+		String id = getEncryptionId(publicKey, symEncAlgo, keyEncAlgo);
+		synchronized (encKeys) {
+
+			Entry entry = encKeys.get(id);
+			if (entry == null) return null;
+
+			if (entry.isValid(publicKey) == false || entry.usage >= maxMessages) {
+
+				encKeys.remove(id);
+				return null;
+
+			}
+
+			entry.usage++;
+			return new EncryptionKey(copy(entry.secretKey), entry.encryptedKey);
+
+		}
+
+	}
+
+	/**
+	 * This method registers an ephemeral key, that has been wrapped
+	 * with the public key of the recipient.
+	 *
+	 * @param publicKey
+	 * @param symEncAlgo
+	 * @param keyEncAlgo
+	 * @param secretKey
+	 * @param encryptedKey
+	 * @throws Exception
+	 */
+	static void putEncryptionKey(PublicKey publicKey, String symEncAlgo, String keyEncAlgo, SecretKey secretKey, byte[] encryptedKey) throws Exception {
+
+		if (enabled == false) return;
+
+		Entry entry = new Entry(new SecWipeableKey(secretKey), encryptedKey, publicKey);
+		entry.usage = 1;
+
+		encKeys.put(getEncryptionId(publicKey, symEncAlgo, keyEncAlgo), entry);
+
+	}
+
+	/**
+	 * This method returns the unwrapped key of the xenc:CipherValue
+	 * provided, if it has been unwrapped before with the same private key.
+	 *
+	 * @param encryptedKey
+	 * @param privateKey
+	 * @return
+	 * @throws Exception
+	 */
+	static SecretKey getDecryptionKey(byte[] encryptedKey, PrivateKey privateKey) throws Exception {
+
+		if (enabled == false) return null;
+
+		String id = getDigest(encryptedKey);
+		synchronized (decKeys) {
+
+			Entry entry = decKeys.get(id);
+			if (entry == null) return null;
+
+			if (entry.isValid(privateKey) == false) {
+
+				decKeys.remove(id);
+				return null;
+
+			}
+
+			return copy(entry.secretKey);
+
+		}
+
+	}
+
+	/**
+	 * @param encryptedKey
+	 * @param privateKey
+	 * @param secretKey
+	 * @throws Exception
+	 */
+	static void putDecryptionKey(byte[] encryptedKey, PrivateKey privateKey, SecretKey secretKey) throws Exception {
+
+		if (enabled == false) return;
+		decKeys.put(getDigest(encryptedKey), new Entry(new SecWipeableKey(secretKey), null, privateKey));
+
+	}
+
+	private static LRUCache<String,Entry> createCache() {
+
+		LRUCache<String,Entry> cache = new LRUCache<String,Entry>(DEFAULT_CAPACITY);
+		cache.setEvictionListener(new LRUCache.EvictionListener<String,Entry>() {
+
+			public void onEviction(String key, Entry value) {
+				value.secretKey.destroy();
+			}
+
+		});
+
+		return cache;
+
+	}
+
+	private static SecretKey copy(SecWipeableKey secretKey) {
+		return new SecretKeySpec(secretKey.getEncoded(), secretKey.getAlgorithm());
+	}
+
+	private static String getEncryptionId(PublicKey publicKey, String symEncAlgo, String keyEncAlgo) throws NoSuchAlgorithmException {
+		return getDigest(publicKey.getEncoded()) + "|" + symEncAlgo + "|" + keyEncAlgo;
+	}
+
+	private static String getDigest(byte[] data) throws NoSuchAlgorithmException {
+
+		return Base64.encode(SecDigestProvider.digest(SecDigestProvider.SHA256, data));
+
+	}
+
+}
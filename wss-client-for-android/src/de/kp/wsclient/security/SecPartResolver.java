@@ -0,0 +1,68 @@
+package de.kp.wsclient.security;
+
+import java.util.Map;
+
+import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.utils.resolver.ResourceResolverException;
+import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+
+/**
+ * This class resolves the same-document references of a signature
+ * from the parts, that have been located by the {@link SecSignature}
+ * in a single pass over the envelope; the referenced elements are not
+ * looked up again by their identifier.
+ * 
+ * The result is the same as the one of the ResolverFragment of the
+ * Apache Santuario framework, i.e. the element with all descendants,
+ * but without comments.
+ * 
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+class SecPartResolver extends ResourceResolverSpi {
+
+	// signed parts by their identifier
+	private final Map<String,Element> parts;
+
+	SecPartResolver(Map<String,Element> parts) {
+		this.parts = parts;
+	}
+
+	public boolean engineIsThreadSafe() {
+		return true;
+	}
+
+	public boolean engineCanResolve(Attr uri, String baseURI) {
+
+		if (uri == null) return false;
+
+		String value = uri.getNodeValue();
+		return (value.length() > 1) && (value.charAt(0) == '#') && parts.containsKey(value.substring(1));
+
+	}
+
+	public XMLSignatureInput engineResolve(Attr uri, String baseURI) throws ResourceResolverException {
+
+		String value = uri.getNodeValue();
+
+		Element element = parts.get(value.substring(1));
+		if (element == null) {
+
+			Object exArgs[] = { value.substring(1) };
+			throw new ResourceResolverException("signature.Verification.MissingID", exArgs, uri, baseURI);
+
+		}
+
+		XMLSignatureInput result = new XMLSignatureInput(element);
+		result.setExcludeComments(true);
+
+		result.setMIMEType("text/xml");
+		result.setSourceURI((baseURI != null && baseURI.length() > 0) ? baseURI.concat(value) : value);
+
+		return result;
+
+	}
+
+}
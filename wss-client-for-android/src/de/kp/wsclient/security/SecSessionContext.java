@@ -0,0 +1,257 @@
+package de.kp.wsclient.security;
+
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.xml.security.algorithms.JCEMapper;
+
+import de.kp.wsclient.util.UUIDGenerator;
+
+/**
+ * This class supports the symmetric binding, where messages are signed
+ * with HMAC-SHA1 or HMAC-SHA256 instead of a private key operation: a
+ * session key is wrapped once with the public key of the recipient and
+ * sent as xenc:EncryptedKey, until the delivery of such a message has
+ * been confirmed; all subsequent messages refer to this key by its
+ * EncryptedKeySHA1 identifier.
+ *
+ * The delivery is confirmed by the SOAPSender for a HTTP 200 response;
+ * if the request fails, a key, that is not established, is replaced.
+ *
+ * The session key is rotated, if its lifetime has elapsed or if the
+ * maximum number of messages has been signed with it; the previous
+ * key remains available to verify responses, that are still in transit.
+ *
+ * A session context is meant to be long-lived and may be shared by
+ * several threads.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecSessionContext {
+
+	// 30 minutes
+	public static final long DEFAULT_KEY_LIFETIME = 30 * 60 * 1000L;
+
+	// no restriction
+	public static final int DEFAULT_MAX_MESSAGES = 0;
+
+	// length of the session key in bytes
+	private static final int KEY_LENGTH = 32;
+
+	private static final SecureRandom random = new SecureRandom();
+
+	// credentials of the recipient, used to wrap the session key
+	private final SecCrypto crypto;
+
+	private final SecSignaturePolicy policy;
+
+	private final String sigAlgo;
+	private final String digestAlgo;
+
+	private String keyEncAlgo = SecConstants.KEYTRANSPORT_RSA15;
+
+	private long keyLifetime = DEFAULT_KEY_LIFETIME;
+	private int maxMessages  = DEFAULT_MAX_MESSAGES;
+
+	private SecSessionKey currentKey;
+	private SecSessionKey previousKey;
+
+	static {
+		// initialize apache santuario framework
+		org.apache.xml.security.Init.init();
+	}
+
+	/**
+	 * @param crypto the credentials of the recipient
+	 * @throws Exception
+	 */
+	public SecSessionContext(SecCrypto crypto) throws Exception {
+		this(crypto, SecSignaturePolicy.LEGACY);
+	}
+
+	/**
+	 * @param crypto the credentials of the recipient
+	 * @param policy determines HMAC-SHA1 or HMAC-SHA256
+	 * @throws Exception
+	 */
+	public SecSessionContext(SecCrypto crypto, SecSignaturePolicy policy) throws Exception {
+
+		if (crypto == null || crypto.getPublicKey() == null) throw new Exception("[SecSessionContext] No public key provided.");
+		if (policy == null) throw new Exception("[SecSessionContext] No signature policy provided.");
+
+		this.crypto = crypto;
+		this.policy = policy;
+
+		this.sigAlgo    = policy.getHmacAlgorithm();
+		this.digestAlgo = policy.getDigestAlgorithm(this.sigAlgo);
+
+	}
+
+	/**
+	 * @param keyLifetime in milliseconds; a value of 0 disables expiration
+	 */
+	public synchronized void setKeyLifetime(long keyLifetime) {
+		this.keyLifetime = keyLifetime;
+	}
+
+	public synchronized long getKeyLifetime() {
+		return keyLifetime;
+	}
+
+	/**
+	 * @param maxMessages the number of messages signed with a single
+	 * session key; a value of 0 disables this restriction
+	 */
+	public synchronized void setMaxMessages(int maxMessages) {
+		this.maxMessages = maxMessages;
+	}
+
+	public synchronized int getMaxMessages() {
+		return maxMessages;
+	}
+
+	/**
+	 * @param keyEncAlgo SecConstants.KEYTRANSPORT_RSA15 (default) or
+	 * SecConstants.KEYTRANSPORT_RSAOEP
+	 */
+	public synchronized void setKeyTransportAlgorithm(String keyEncAlgo) {
+		this.keyEncAlgo = keyEncAlgo;
+	}
+
+	public SecSignaturePolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return the URI of the HMAC signature algorithm
+	 */
+	public String getSignatureAlgorithm() {
+		return sigAlgo;
+	}
+
+	/**
+	 * @return the URI of the digest algorithm of the references
+	 */
+	public String getDigestAlgorithm() {
+		return digestAlgo;
+	}
+
+	/**
+	 * @return the certificate of the recipient, or null
+	 */
+	public X509Certificate getRecipientCertificate() {
+		return crypto.getCertificate();
+	}
+
+	/**
+	 * This method returns the session key to sign the next message
+	 * with; a new key is created, if the current key has expired or
+	 * has reached the maximum number of messages.
+	 *
+	 * @return
+	 * @throws Exception
+	 */
+	public synchronized SecSessionKey acquire() throws Exception {
+
+		if (currentKey == null || currentKey.isExpired() || (maxMessages > 0 && currentKey.getUsage() >= maxMessages)) {
+			rotate();
+		}
+
+		currentKey.incrementUsage();
+		return currentKey;
+
+	}
+
+	/**
+	 * This method replaces the current session key by a new one; the
+	 * current key is still accepted for verification until it expires.
+	 * If there is no current key, e.g. after a rejected key has been
+	 * discarded, the previous key is retained.
+	 *
+	 * @throws Exception
+	 */
+	public synchronized void rotate() throws Exception {
+
+		SecSessionKey key = createKey();
+
+		if (currentKey != null) previousKey = currentKey;
+		currentKey = key;
+
+	}
+
+	/**
+	 * This method registers the delivery of a message, that carries the
+	 * xenc:EncryptedKey of the session key provided; subsequent messages
+	 * refer to the key by its EncryptedKeySHA1 identifier.
+	 *
+	 * @param key
+	 */
+	public void confirm(SecSessionKey key) {
+		if (key != null) key.establish();
+	}
+
+	/**
+	 * This method registers a failed request, that was signed with the
+	 * session key provided; if the key has not been established yet, the
+	 * recipient may not know it: the key is discarded, and a new key is
+	 * created with the next message. The previous key, that is known to
+	 * the recipient, is still accepted for verification.
+	 *
+	 * @param key
+	 */
+	public synchronized void reject(SecSessionKey key) {
+
+		if (key == null || key.isEstablished() || key != currentKey) return;
+		currentKey = null;
+
+	}
+
+	/**
+	 * This method discards all session keys, e.g. if the recipient
+	 * rejected a message, as it does not know the session key.
+	 */
+	public synchronized void invalidate() {
+
+		currentKey  = null;
+		previousKey = null;
+
+	}
+
+	/**
+	 * This method determines the session key from its EncryptedKeySHA1
+	 * identifier; expired keys are no longer accepted.
+	 *
+	 * @param encryptedKeySHA1
+	 * @return the session key, or null
+	 */
+	public synchronized SecSessionKey getKey(String encryptedKeySHA1) {
+
+		if (encryptedKeySHA1 == null) return null;
+
+		if (currentKey != null && currentKey.isExpired() == false && encryptedKeySHA1.equals(currentKey.getEncryptedKeySHA1()))
+			return currentKey;
+
+		if (previousKey != null && previousKey.isExpired() == false && encryptedKeySHA1.equals(previousKey.getEncryptedKeySHA1()))
+			return previousKey;
+
+		return null;
+
+	}
+
+	private SecSessionKey createKey() throws Exception {
+
+		byte[] rawKey = new byte[KEY_LENGTH];
+		random.nextBytes(rawKey);
+
+		SecretKey secretKey = new SecretKeySpec(rawKey, JCEMapper.translateURItoJCEID(sigAlgo));
+		byte[] encryptedKey = SecUtil.wrapKey(secretKey, keyEncAlgo, crypto.getPublicKey());
+
+		return new SecSessionKey("EK-" + UUIDGenerator.getUUID(), secretKey, encryptedKey, keyEncAlgo, keyLifetime);
+
+	}
+
+}
@@ -0,0 +1,123 @@
+package de.kp.wsclient.security;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
+
+import org.apache.xml.security.utils.Base64;
+
+/**
+ * This class holds a symmetric session key together with its RSA
+ * wrapped representation, i.e. the content of the xenc:CipherValue
+ * of the xenc:EncryptedKey, that establishes the key, and the
+ * EncryptedKeySHA1 identifier, that refers to it.
+ *
+ * Session keys are created and rotated by a {@link SecSessionContext}.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecSessionKey {
+
+	private final SecretKey secretKey;
+
+	// wrapped key and key transport algorithm
+	private final byte[] encryptedKey;
+	private final String keyEncAlgo;
+
+	// Base64 encoded SHA-1 digest of the wrapped key
+	private final String encryptedKeySHA1;
+
+	// wsu:Id of the xenc:EncryptedKey element
+	private final String id;
+
+	private final long created;
+	private final long expires;
+
+	// number of messages signed with this key
+	private final AtomicInteger usage = new AtomicInteger();
+
+	// indicates, whether the recipient has received the xenc:EncryptedKey
+	private final AtomicBoolean established = new AtomicBoolean(false);
+
+	SecSessionKey(String id, SecretKey secretKey, byte[] encryptedKey, String keyEncAlgo, long lifetime) throws Exception {
+
+		this.id = id;
+
+		this.secretKey    = secretKey;
+		this.encryptedKey = encryptedKey;
+
+		this.keyEncAlgo = keyEncAlgo;
+		this.encryptedKeySHA1 = Base64.encode(SecUtil.generateDigest(encryptedKey));
+
+		this.created = System.currentTimeMillis();
+		this.expires = (lifetime > 0) ? created + lifetime : Long.MAX_VALUE;
+
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public SecretKey getSecretKey() {
+		return secretKey;
+	}
+
+	public byte[] getEncryptedKey() {
+		return encryptedKey;
+	}
+
+	public String getKeyEncryptionAlgorithm() {
+		return keyEncAlgo;
+	}
+
+	/**
+	 * @return the Base64 encoded SHA-1 digest of the wrapped key
+	 */
+	public String getEncryptedKeySHA1() {
+		return encryptedKeySHA1;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public long getExpires() {
+		return expires;
+	}
+
+	public boolean isExpired() {
+		return System.currentTimeMillis() >= expires;
+	}
+
+	/**
+	 * @return the number of messages signed with this key
+	 */
+	public int getUsage() {
+		return usage.get();
+	}
+
+	int incrementUsage() {
+		return usage.incrementAndGet();
+	}
+
+	/**
+	 * This method is invoked, when a message, that carries the
+	 * xenc:EncryptedKey, has been delivered to the recipient.
+	 */
+	void establish() {
+		established.set(true);
+	}
+
+	/**
+	 * @return true, if the recipient has confirmed a message with the
+	 * xenc:EncryptedKey; until then, every message signed with this key
+	 * carries the xenc:EncryptedKey, afterwards messages refer to the
+	 * key by its SHA-1.
+	 */
+	public boolean isEstablished() {
+		return established.get();
+	}
+
+}
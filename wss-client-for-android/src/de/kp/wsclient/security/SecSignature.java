@@ -3,8 +3,10 @@ package de.kp.wsclient.security;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.xml.security.algorithms.SignatureAlgorithm;
 import org.apache.xml.security.keys.KeyInfo;
@@ -29,6 +31,13 @@ import org.w3c.dom.Text;
  * the certificate is provided with the message and
  * finally used to verify the signature.
  * 
+ * In addition, messages may be signed with a session key
+ * (symmetric binding), that is provided by a SecSessionContext.
+ * 
+ * By default, the SOAP body is signed; a single signature may also
+ * cover several parts, e.g. a wsu:Timestamp, WS-Addressing headers
+ * and the wsse:BinarySecurityToken, see {@link #setParts(List)}.
+ * 
  * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
  *
  */
@@ -37,8 +46,32 @@ public class SecSignature extends SecBase {
 	private X509Certificate certificate;
 	private PrivateKey privateKey;
 	
+	// optional signing context, that is shared by several messages
+	private SecSigningContext context;
+	
+	// optional session context (HMAC signatures)
+	private SecSessionContext session;
+	
+	// the session key, the message has been signed with
+	private SecSessionKey sessionKey;
+	
+	// determines signature and digest algorithm
+	private SecSignaturePolicy policy = SecSignaturePolicy.LEGACY;
+	
 	private Element wsseSecurity;
 	
+	// optional parts to sign; the SOAP body is signed by default
+	private List<SecEncPart> parts;
+
+	// the identifier attributes of a signature part in the order
+	// they are checked; the id attribute is the one of the soap:Body
+	// of a SOAPMessage
+	private static final String[][] ID_ATTRIBUTES = {
+		{SecConstants.WSU_NS, "Id"},
+		{null, "Id"},
+		{null, "id"}
+	};
+
 	static {
     	// initialize apache santuario framework
     	org.apache.xml.security.Init.init();
@@ -57,12 +90,46 @@ public class SecSignature extends SecBase {
 		this.privateKey  = sigCrypto.getPrivateKey();
 		
 	}
+
+	/**
+	 * This constructor is used to sign with a long-lived signing
+	 * context; certificate encoding, algorithm selection and the
+	 * initialization of the signature engine are not repeated for
+	 * each message.
+	 * 
+	 * @param context
+	 */
+	public SecSignature(SecSigningContext context) {
+		
+		this.context = context;
+		this.policy  = context.getPolicy();
+		
+		this.certificate = context.getCertificate();
+		this.privateKey  = context.getPrivateKey();
+		
+	}
+	
+	/**
+	 * This constructor is used to sign with the session key of a
+	 * symmetric binding; the message carries no certificate, and
+	 * the signature value is computed with HMAC.
+	 * 
+	 * @param session
+	 */
+	public SecSignature(SecSessionContext session) {
+		
+		this.session = session;
+		this.policy  = session.getPolicy();
+		
+	}
 	
 	/**
 	 * @param certificate
 	 */
 	public void setCertificate(X509Certificate certificate) {
 		this.certificate = certificate;
+		this.context = null;
+		this.session = null;
 	}
 	
 	/**
@@ -70,8 +137,48 @@ public class SecSignature extends SecBase {
 	 */
 	public void setPrivateKey(PrivateKey privateKey) {
 		this.privateKey = privateKey;
+		this.context = null;
+		this.session = null;
 	}
 	
+	/**
+	 * The signature policy determines the signature algorithm
+	 * and the digest method of the references; it is ignored,
+	 * if a signing or session context is used.
+	 * 
+	 * @param policy
+	 */
+	public void setPolicy(SecSignaturePolicy policy) {
+		if (policy != null && this.context == null && this.session == null) this.policy = policy;
+	}
+	
+	
+	/**
+	 * This method determines the parts of a message, that are covered
+	 * by a single signature; a part is specified by its wsu:Id (or Id),
+	 * or by the name and namespace of the element(s), just as the parts
+	 * of an encryption. The encryption modifier is ignored.
+	 * 
+	 * The wsse:BinarySecurityToken of the signature is a valid part, as
+	 * it is added to the security header before the parts are located;
+	 * elements without any identifier are assigned a wsu:Id.
+	 * 
+	 * @param parts the parts to sign, or null to sign the SOAP body
+	 */
+	public void setParts(List<SecEncPart> parts) {
+		this.parts = (parts == null || parts.isEmpty()) ? null : new ArrayList<SecEncPart>(parts);
+	}
+	
+	/**
+	 * @return the session key of a HMAC signature, or null
+	 */
+	public SecSessionKey getSessionKey() {
+		return sessionKey;
+	}
+	
+	public List<SecEncPart> getParts() {
+		return parts;
+	}
 	
 	/**
 	 * this method adds a signed wsse:Security element to
@@ -110,11 +217,18 @@ public class SecSignature extends SecBase {
 		
 		this.wsseSecurity = getSecHeader(xmlDoc);
 		
+		// signed parts may be located in the security header, and all
+		// parts are canonicalized in place; therefore a new security
+		// header is added to the SOAP header before signing
+		if (this.parts != null && this.wsseSecurity.getParentNode() == null) getSOAPHeader(xmlDoc).appendChild(this.wsseSecurity);
+		
+		if (this.session != null) return createSessionSecurity(xmlDoc);
+		
 		// add wsse:BinarySecurityToken
 		Element wsseBinarySecurityToken = createWSSEBinarySecurityToken(xmlDoc);
 		wsseSecurity.appendChild(wsseBinarySecurityToken);
 		
-		XMLSignature signature = createSignature(xmlDoc);
+		XMLSignature signature = createSignature(xmlDoc, createSTR(xmlDoc));
 		
         // finally sign the referenced body and add the signature value
         // to the respective signature
@@ -124,11 +238,154 @@ public class SecSignature extends SecBase {
 		// add ds:Signature to the security header
 		wsseSecurity.appendChild(signature.getElement());
         
-        if (this.privateKey != null) signature.sign(this.privateKey);
+        if (this.context != null) {
+        	this.context.sign(signature);
+        
+        } else if (this.privateKey != null) {
+        	signature.sign(this.privateKey);
+        }
+        
 		return wsseSecurity;
 		
 	}
 	
+	/**
+	 * This method signs the message with the current session key; until
+	 * the key is established, i.e. its delivery has been confirmed, the
+	 * message carries the xenc:EncryptedKey and refers to it directly,
+	 * afterwards messages refer to the key by its SHA-1.
+	 * 
+	 * @param xmlDoc
+	 * @return
+	 * @throws Exception
+	 */
+	private Element createSessionSecurity(Document xmlDoc) throws Exception {
+		
+		SecSessionKey sessionKey = this.session.acquire();
+		this.sessionKey = sessionKey;
+		
+		Element secRef = null;
+		if (sessionKey.isEstablished() == false) {
+			
+			wsseSecurity.appendChild(createEncryptedKey(xmlDoc, sessionKey));
+			secRef = createEncryptedKeySTR(xmlDoc, sessionKey);
+			
+		} else {
+			secRef = createEncryptedKeySHA1STR(xmlDoc, sessionKey);
+			
+		}
+		
+		XMLSignature signature = createSignature(xmlDoc, secRef);
+		wsseSecurity.appendChild(signature.getElement());
+		
+		signature.sign(sessionKey.getSecretKey());
+		return wsseSecurity;
+		
+	}
+
+	/*
+	 * <xenc:EncryptedKey Id="EK-...">
+	 * 	<xenc:EncryptionMethod Algorithm="http://www.w3.org/2001/04/xmlenc#rsa-1_5"/>
+	 * 	<ds:KeyInfo>
+	 * 		<wsse:SecurityTokenReference>
+	 * 			<wsse:KeyIdentifier EncodingType="...#Base64Binary" ValueType="...#ThumbprintSHA1">...</wsse:KeyIdentifier>
+	 * 		</wsse:SecurityTokenReference>
+	 * 	</ds:KeyInfo>
+	 * 	<xenc:CipherData>
+	 * 		<xenc:CipherValue>...</xenc:CipherValue>
+	 * 	</xenc:CipherData>
+	 * </xenc:EncryptedKey>
+	 */
+	
+	/**
+	 * @param xmlDoc
+	 * @param sessionKey
+	 * @return
+	 * @throws Exception
+	 */
+	private Element createEncryptedKey(Document xmlDoc, SecSessionKey sessionKey) throws Exception {
+		
+		Element encryptedKey = xmlDoc.createElementNS(SecConstants.ENC_NS, SecConstants.ENC_PRE + ":" + SecConstants.ENCRYPTED_KEY_LN);
+		SecUtil.setNamespace(encryptedKey, SecConstants.ENC_NS, SecConstants.ENC_PRE);
+		
+		encryptedKey.setAttributeNS(null, "Id", sessionKey.getId());
+		
+		Element encryptionMethod = xmlDoc.createElementNS(SecConstants.ENC_NS, SecConstants.ENC_PRE + ":EncryptionMethod");
+		encryptionMethod.setAttributeNS(null, "Algorithm", sessionKey.getKeyEncryptionAlgorithm());
+		
+		encryptedKey.appendChild(encryptionMethod);
+		
+		// the recipient's certificate is referenced by its thumbprint
+		X509Certificate recipient = this.session.getRecipientCertificate();
+		if (recipient != null) {
+			
+			Element keyInfo = XMLUtils.createElementInSignatureSpace(xmlDoc, Constants._TAG_KEYINFO);
+			keyInfo.setAttributeNS(SecConstants.XMLNS_NS, "xmlns:" + SecConstants.SIG_PRE, SecConstants.SIG_NS);
+			
+			String thumbprint = Base64.encode(SecUtil.generateDigest(recipient.getEncoded()));
+			keyInfo.appendChild(createKeyIdentifierSTR(xmlDoc, SecConstants.WSS_THUMBPRINT_VALUE_TYPE, thumbprint));
+			
+			encryptedKey.appendChild(keyInfo);
+			
+		}
+		
+		Element cipherData  = xmlDoc.createElementNS(SecConstants.ENC_NS, SecConstants.ENC_PRE + ":CipherData");
+		Element cipherValue = xmlDoc.createElementNS(SecConstants.ENC_NS, SecConstants.ENC_PRE + ":CipherValue");
+		
+		cipherValue.appendChild(SecUtil.createBase64EncodedTextNode(xmlDoc, sessionKey.getEncryptedKey()));
+		cipherData.appendChild(cipherValue);
+		
+		encryptedKey.appendChild(cipherData);
+		return encryptedKey;
+		
+	}
+	
+	/*
+	 * <wsse:SecurityTokenReference>
+	 * 	<wsse:Reference URI="#EK-..." ValueType="http://docs.oasis-open.org/wss/oasis-wss-soap-message-security-1.1#EncryptedKey"/>
+	 * </wsse:SecurityTokenReference>
+	 */
+	private Element createEncryptedKeySTR(Document xmlDoc, SecSessionKey sessionKey) {
+		
+		String qualifiedName = SecConstants.WSSE_PRE + ":" + SecConstants.SECURITY_TOKEN_REFERENCE;
+		Element secRef = xmlDoc.createElementNS(SecConstants.WSSE_NS, qualifiedName);
+		
+		Element ref = createReference(xmlDoc);
+		
+		ref.setAttribute("URI", "#" + sessionKey.getId());
+		ref.setAttribute("ValueType", SecConstants.WSS_ENC_KEY_VALUE_TYPE);
+		
+		secRef.appendChild(ref);
+		return secRef;
+		
+	}
+	
+	/*
+	 * <wsse:SecurityTokenReference>
+	 * 	<wsse:KeyIdentifier EncodingType="...#Base64Binary" ValueType="...#EncryptedKeySHA1">...</wsse:KeyIdentifier>
+	 * </wsse:SecurityTokenReference>
+	 */
+	private Element createEncryptedKeySHA1STR(Document xmlDoc, SecSessionKey sessionKey) {
+		return createKeyIdentifierSTR(xmlDoc, SecConstants.WSS_ENC_KEY_SHA1_VALUE_TYPE, sessionKey.getEncryptedKeySHA1());
+	}
+	
+	private Element createKeyIdentifierSTR(Document xmlDoc, String valueType, String value) {
+		
+		String qualifiedName = SecConstants.WSSE_PRE + ":" + SecConstants.SECURITY_TOKEN_REFERENCE;
+		Element secRef = xmlDoc.createElementNS(SecConstants.WSSE_NS, qualifiedName);
+		
+		Element keyIdentifier = xmlDoc.createElementNS(SecConstants.WSSE_NS, SecConstants.WSSE_PRE + ":" + SecConstants.KEY_IDENTIFIER);
+		
+		keyIdentifier.setAttribute("EncodingType", SecConstants.BST_BASE64_ENCODING);
+		keyIdentifier.setAttribute("ValueType", valueType);
+		
+		keyIdentifier.appendChild(xmlDoc.createTextNode(value));
+		
+		secRef.appendChild(keyIdentifier);
+		return secRef;
+		
+	}
+	
 	/*
 	 * <wsse:BinarySecurityToken 
 	 *	 EncodingType="http://docs.oasisopen.org/wss/2004/01/oasis-200401-wss-soap-message-security-1.0#Base64Binary" 
@@ -193,10 +450,11 @@ public class SecSignature extends SecBase {
 	 * This method creates an instance of XMLSignature.
 	 * 
 	 * @param xmlDoc
+	 * @param secRef the wsse:SecurityTokenReference of the ds:KeyInfo
 	 * @return
 	 * @throws Exception
 	 */
-	private XMLSignature createSignature(Document xmlDoc) throws Exception {
+	private XMLSignature createSignature(Document xmlDoc, Element secRef) throws Exception {
 
 		 //	<ds:CanonicalizationMethod Algorithm="http://www.w3.org/2001/10/xml-exc-c14n#">
 		 //		<c14n:InclusiveNamespaces PrefixList="wsse soap" xmlns:c14n="http://www.w3.org/2001/10/xml-exc-c14n#"/>
@@ -216,7 +474,24 @@ public class SecSignature extends SecBase {
 		// determine signing algorithm
         // <ds:SignatureMethod Algorithm="http://www.w3.org/2000/09/xmldsig#rsa-sha1"/>
 		
-        String sigAlgo = getSignatureAlgorithm();
+        String sigAlgo = null;
+        String digestAlgo = null;
+        
+		// <ds:DigestMethod Algorithm="http://www.w3.org/2001/04/xmlenc#sha256"/>
+        if (this.session != null) {
+        	sigAlgo    = this.session.getSignatureAlgorithm();
+        	digestAlgo = this.session.getDigestAlgorithm();
+        	
+        } else if (this.context != null) {
+        	sigAlgo    = this.context.getSignatureAlgorithm();
+        	digestAlgo = this.context.getDigestAlgorithm();
+        
+        } else {
+        	sigAlgo    = getSignatureAlgorithm();
+        	digestAlgo = (sigAlgo == null) ? null : this.policy.getDigestAlgorithm(sigAlgo);
+        
+        }
+        
 		if (sigAlgo == null) throw new Exception("[Signature] Unknown signature algorithm.");
 
 		// create signature
@@ -232,7 +507,14 @@ public class SecSignature extends SecBase {
          */
 
         KeyInfo keyInfo = sig.getKeyInfo();
-        keyInfo.getElement().appendChild(createSTR(xmlDoc));
+        keyInfo.getElement().appendChild(secRef);
+        
+        if (this.parts != null) {
+        	
+        	addParts(xmlDoc, sig, digestAlgo);
+        	return sig;
+        	
+        }
       
    	 	/*	
    	 	 * <ds:Reference URI="#TheBody">
@@ -260,36 +542,258 @@ public class SecSignature extends SecBase {
         Element body = getSOAPBody(xmlDoc);
         String referenceURI = "#" + body.getAttribute("id");
         
-        // the digest method used with the subsequent call is
-        // <ds:DigestMethod Algorithm="http://www.w3.org/2000/09/xmldsig#sha1"/>
-        sig.addDocument(referenceURI, transforms);
+        // the identifier index registers the id of the body
+        // for the Apache Santuario framework
+        if (SecIdIndex.getIndex(xmlDoc).getElement(referenceURI, true) != body) throw new Exception("[SecSignature] Signature part not found.");
+        
+        // the digest method matches the hash function of the signature
+        // algorithm, e.g. SHA-256 for ECDSA-SHA256 and RSA-SHA256
+        sig.addDocument(referenceURI, transforms, digestAlgo);
  
         return sig;
 
 	}
 	
+	/**
+	 * This method adds a reference for each element of the signature
+	 * parts; the references are resolved from the located elements,
+	 * i.e. the elements are not looked up again by their identifier.
+	 * 
+	 * @param xmlDoc
+	 * @param sig
+	 * @param digestAlgo
+	 * @throws Exception
+	 */
+	private void addParts(Document xmlDoc, XMLSignature sig, String digestAlgo) throws Exception {
+		
+		Map<String,Element> references = new HashMap<String,Element>();
+		for (Element element:findParts(xmlDoc)) {
+			
+			String id = getPartId(element);
+			if (references.containsKey(id)) {
+
+				// an element may be specified by more than one part
+				if (references.get(id) == element) continue;
+				throw new Exception("[SecSignature] Duplicate Id: " + id);
+				
+			}
+			
+			references.put(id, element);
+			declareNamespaces(element);
+			
+			// the namespaces in scope of the part, that are not visibly
+			// utilized, are listed as inclusive namespaces
+			InclusiveNamespaces inclusiveNamespaces = new InclusiveNamespaces(xmlDoc, new HashSet<String>(getInclusivePrefixes(element, true)));
+			
+			Transforms transforms = new Transforms(xmlDoc);
+			transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS, inclusiveNamespaces.getElement());
+			
+			sig.addDocument("#" + id, transforms, digestAlgo);
+			
+		}
+		
+		sig.addResourceResolver(new SecPartResolver(references));
+		
+	}
+	
+	/**
+	 * This method locates the elements of all signature parts in a
+	 * single depth-first pass over the envelope; the elements are
+	 * returned in the order of the parts, and the elements of a part,
+	 * that is specified by name, in document order.
+	 * 
+	 * @param xmlDoc
+	 * @return
+	 * @throws Exception
+	 */
+	private List<Element> findParts(Document xmlDoc) throws Exception {
+		
+		int size = this.parts.size();
+		List<List<Element>> found = new ArrayList<List<Element>>(size);
+		
+		// indexes of the parts by identifier and by qualified name
+		Map<String,Integer> ids   = new HashMap<String,Integer>();
+		Map<String,Integer> names = new HashMap<String,Integer>();
+		
+		for (int i = 0; i < size; i++) {
+			
+			SecEncPart part = this.parts.get(i);
+			found.add(new ArrayList<Element>(1));
+			
+			Integer index = Integer.valueOf(i);
+			if (part.getElement() != null) {
+				found.get(i).add(part.getElement());
+			
+			} else if (part.getId() != null) {
+				if (ids.put(SecUtil.getIDFromReference(part.getId()), index) != null) throw new Exception("[SecSignature] Duplicate signature part: " + part.getId());
+			
+			} else if (part.getName() != null) {
+				if (names.put(getPartKey(part.getNamespace(), part.getName()), index) != null) throw new Exception("[SecSignature] Duplicate signature part: " + part.getName());
+			
+			} else {
+				throw new Exception("[SecSignature] Invalid signature part.");
+				
+			}
+			
+		}
+		
+		int pending = ids.size();
+		
+		Node node = xmlDoc.getDocumentElement();
+		while (node != null && (pending > 0 || names.isEmpty() == false)) {
+			
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				
+				Element element = (Element)node;
+				if (names.isEmpty() == false) {
+					
+					Integer index = names.get(getPartKey(element.getNamespaceURI(), element.getLocalName()));
+					if (index != null) found.get(index.intValue()).add(element);
+					
+				}
+				
+				if (pending > 0) {
+					
+					Integer index = getPartIndex(element, ids);
+					if (index != null && found.get(index.intValue()).isEmpty()) {
+						
+						found.get(index.intValue()).add(element);
+						pending--;
+						
+					}
+					
+				}
+				
+			}
+			
+			// depth-first: first child, next sibling or the next
+			// sibling of the nearest ancestor, that has one
+			Node next = node.getFirstChild();
+			while (next == null && node != null) {
+				
+				next = node.getNextSibling();
+				node = node.getParentNode();
+				
+			}
+			
+			node = next;
+			
+		}
+		
+		List<Element> elements = new ArrayList<Element>(size);
+		for (int i = 0; i < size; i++) {
+			
+			if (found.get(i).isEmpty()) throw new Exception("[SecSignature] Signature part not found.");
+			elements.addAll(found.get(i));
+			
+		}
+		
+		return elements;
+		
+	}
+	
+	private static String getPartKey(String namespace, String localName) {
+		return ((namespace == null) ? "" : namespace) + "|" + localName;
+	}
+	
+	private static Integer getPartIndex(Element element, Map<String,Integer> ids) {
+		
+		for (int i = 0; i < ID_ATTRIBUTES.length; i++) {
+			
+			String id = getIdAttribute(element, i);
+			if (id == null) continue;
+			
+			Integer index = ids.get(id);
+			if (index != null) return index;
+			
+		}
+		
+		return null;
+		
+	}
+	
+	/**
+	 * @param element
+	 * @param i the index of the identifier attribute, see ID_ATTRIBUTES
+	 * @return the value of the identifier attribute, or null, if the
+	 * element does not carry this attribute
+	 */
+	private static String getIdAttribute(Element element, int i) {
+		
+		String namespace = ID_ATTRIBUTES[i][0];
+		String localName = ID_ATTRIBUTES[i][1];
+		
+		return element.hasAttributeNS(namespace, localName) ? element.getAttributeNS(namespace, localName) : null;
+		
+	}
+	
+	/**
+	 * This method returns the identifier of a signature part; a
+	 * wsu:Id is assigned to elements without identifier, e.g.
+	 * to WS-Addressing headers.
+	 * 
+	 * @param element
+	 * @return
+	 */
+	private String getPartId(Element element) {
+		
+		for (int i = 0; i < ID_ATTRIBUTES.length; i++) {
+			
+			String id = getIdAttribute(element, i);
+			if (id != null) return id;
+			
+		}
+		
+		String id = SecUtil.getIdAllocator().createId("id-", element);
+		
+		String prefix = SecUtil.setNamespace(element, SecConstants.WSU_NS, SecConstants.WSU_PRE);
+		element.setAttributeNS(SecConstants.WSU_NS, prefix + ":Id", id);
+		
+		return id;
+		
+	}
+	
+	/**
+	 * The exclusive canonicalization outputs those namespace declarations
+	 * only, that are present as attributes; elements, that are created
+	 * with createElementNS, e.g. the wsse:BinarySecurityToken, do not
+	 * carry them before serialization. Therefore the namespaces of the
+	 * part element and its prefixed attributes are declared explicitly.
+	 * 
+	 * @param element
+	 */
+	private void declareNamespaces(Element element) {
+		
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(element);
+		
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			nodes.add(attributes.item(i));
+		}
+		
+		for (Node node:nodes) {
+			
+			String prefix = node.getPrefix();
+			String namespace = node.getNamespaceURI();
+			
+			if (prefix == null || namespace == null || "xmlns".equals(prefix) || "xml".equals(prefix)) continue;
+			if (prefix.equals(SecUtil.getPrefixNS(namespace, element)) == false) element.setAttributeNS(SecConstants.XMLNS_NS, "xmlns:" + prefix, namespace);
+			
+		}
+		
+	}
+	
 	/**
 	 * This method determine signature algorithm from the 
-	 * public key algorithm.
+	 * public key algorithm and the signature policy.
 	 * 
 	 * @return Signature Algorithm
 	 */
 	private String getSignatureAlgorithm() {
 
 		if (this.certificate == null) return null;
-		
-		// determine signing algorithm
-		String sigAlgo = null;
-
-    	String pubKeyAlgo = this.certificate.getPublicKey().getAlgorithm();
-        if (pubKeyAlgo.equalsIgnoreCase("DSA")) {
-            sigAlgo = XMLSignature.ALGO_ID_SIGNATURE_DSA;
-
-        } else if (pubKeyAlgo.equalsIgnoreCase("RSA")) {
-            sigAlgo = XMLSignature.ALGO_ID_SIGNATURE_RSA;
-        }
- 		
-		return sigAlgo;
+		return this.policy.getSignatureAlgorithm(this.certificate.getPublicKey());
 
 	}
 
@@ -300,10 +804,10 @@ public class SecSignature extends SecBase {
      */
     private Text createToken(Document xmlDoc) throws Exception {
         
-    	if (this.certificate == null) throw new Exception("[Binary Security Token] Illegal certificate.");
-    	byte[] data = certificate.getEncoded();
+    	if (this.context != null) return xmlDoc.createTextNode(this.context.getEncodedCertificate());
     	
-    	return xmlDoc.createTextNode((Base64.encode(data)));
+    	if (this.certificate == null) throw new Exception("[Binary Security Token] Illegal certificate.");
+    	return xmlDoc.createTextNode(SecTokenCache.getEncodedCertificate(certificate));
  
     }
     
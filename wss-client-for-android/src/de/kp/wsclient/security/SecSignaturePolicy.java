@@ -0,0 +1,162 @@
+package de.kp.wsclient.security;
+
+import java.security.PublicKey;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.signature.XMLSignature;
+
+/**
+ * This class determines the signature algorithm and the digest method
+ * of the ds:Reference elements from the public key algorithm of the
+ * signing certificate, and restricts the algorithms, that are accepted
+ * when a signature is verified.
+ *
+ * EC keys are always used with ECDSA-SHA256; RSA keys are used with
+ * RSA-SHA1 (LEGACY, which is the default to remain compatible with
+ * existing service endpoints) or with RSA-SHA256; DSA keys are always
+ * used with DSA-SHA1. Session keys of the symmetric binding are used
+ * with HMAC-SHA1 (LEGACY) or HMAC-SHA256.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecSignaturePolicy {
+
+	/*
+	 * RSA-SHA1 and SHA-1 digests for RSA and DSA keys; all
+	 * algorithms registered with Apache Santuario are accepted
+	 * for verification
+	 */
+	public static final SecSignaturePolicy LEGACY = new SecSignaturePolicy(false, true);
+
+	/*
+	 * RSA-SHA256 and SHA-256 digests for RSA and EC keys; all
+	 * algorithms registered with Apache Santuario are accepted
+	 * for verification
+	 */
+	public static final SecSignaturePolicy SHA256 = new SecSignaturePolicy(true, true);
+
+	/*
+	 * Same as SHA256, but only the SHA-2 based signatures and
+	 * digests are accepted for verification
+	 */
+	public static final SecSignaturePolicy STRICT = new SecSignaturePolicy(true, false);
+
+	private final boolean preferSHA256;
+	private final boolean acceptSHA1;
+
+	// the accepted algorithms of the STRICT policy; the other
+	// policies leave the check to the Apache Santuario framework
+	private final Set<String> signatureAlgorithms = new HashSet<String>();
+	private final Set<String> digestAlgorithms    = new HashSet<String>();
+
+	private SecSignaturePolicy(boolean preferSHA256, boolean acceptSHA1) {
+
+		this.preferSHA256 = preferSHA256;
+		this.acceptSHA1   = acceptSHA1;
+
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256);
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA384);
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA512);
+
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256);
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA384);
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA512);
+
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_MAC_HMAC_SHA256);
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_MAC_HMAC_SHA384);
+		signatureAlgorithms.add(XMLSignature.ALGO_ID_MAC_HMAC_SHA512);
+
+		digestAlgorithms.add(MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+		digestAlgorithms.add(MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA384);
+		digestAlgorithms.add(MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA512);
+
+	}
+
+	/**
+	 * This method determines the signature algorithm from
+	 * the public key algorithm.
+	 *
+	 * @param publicKey
+	 * @return the URI of the signature algorithm, or null
+	 */
+	public String getSignatureAlgorithm(PublicKey publicKey) {
+
+		String pubKeyAlgo = publicKey.getAlgorithm();
+		if (pubKeyAlgo.equalsIgnoreCase("EC") || pubKeyAlgo.equalsIgnoreCase("ECDSA")) {
+			return XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256;
+
+		} else if (pubKeyAlgo.equalsIgnoreCase("RSA")) {
+			return (preferSHA256) ? XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256 : XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA1;
+
+		} else if (pubKeyAlgo.equalsIgnoreCase("DSA") && acceptSHA1) {
+			// DSA is restricted to SHA-1 (FIPS 186-2)
+			return XMLSignature.ALGO_ID_SIGNATURE_DSA;
+
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * @return the URI of the HMAC algorithm used with session keys
+	 */
+	public String getHmacAlgorithm() {
+		return (preferSHA256) ? XMLSignature.ALGO_ID_MAC_HMAC_SHA256 : XMLSignature.ALGO_ID_MAC_HMAC_SHA1;
+	}
+
+	/**
+	 * This method determines the digest method of the ds:Reference
+	 * elements, that matches the hash function of the signature algorithm.
+	 *
+	 * @param sigAlgo
+	 * @return the URI of the digest algorithm
+	 */
+	public String getDigestAlgorithm(String sigAlgo) {
+
+		if (XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256.equals(sigAlgo) || XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256.equals(sigAlgo)
+			|| XMLSignature.ALGO_ID_MAC_HMAC_SHA256.equals(sigAlgo))
+			return MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256;
+
+		return MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA1;
+
+	}
+
+	/**
+	 * @param sigAlgo
+	 * @return true, if a signature with this algorithm is accepted
+	 */
+	public boolean isAcceptedSignatureAlgorithm(String sigAlgo) {
+
+		// unknown algorithms are rejected by Apache Santuario
+		if (acceptSHA1) return (sigAlgo != null);
+		return signatureAlgorithms.contains(sigAlgo);
+
+	}
+
+	/**
+	 * @param sigAlgo
+	 * @return true, if the signature algorithm requires a session key
+	 */
+	public static boolean isSymmetricAlgorithm(String sigAlgo) {
+
+		return XMLSignature.ALGO_ID_MAC_HMAC_SHA1.equals(sigAlgo) || XMLSignature.ALGO_ID_MAC_HMAC_SHA256.equals(sigAlgo)
+			|| XMLSignature.ALGO_ID_MAC_HMAC_SHA384.equals(sigAlgo) || XMLSignature.ALGO_ID_MAC_HMAC_SHA512.equals(sigAlgo);
+
+	}
+
+	/**
+	 * @param digestAlgo
+	 * @return true, if a reference with this digest method is accepted
+	 */
+	public boolean isAcceptedDigestAlgorithm(String digestAlgo) {
+
+		if (acceptSHA1) return (digestAlgo != null);
+		return digestAlgorithms.contains(digestAlgo);
+
+	}
+
+}
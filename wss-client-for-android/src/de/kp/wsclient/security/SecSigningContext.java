@@ -0,0 +1,156 @@
+package de.kp.wsclient.security;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.apache.xml.security.algorithms.SignatureAlgorithm;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+
+/**
+ * This class holds everything, that is independent of a certain SOAP
+ * message, when signing with the credentials of a SecCrypto: the
+ * signature algorithm, the Base64 encoded certificate used as the
+ * wsse:BinarySecurityToken, and a signature engine per thread, that
+ * is initialized with the private key once.
+ *
+ * A signing context is meant to be long-lived and may be shared by
+ * several threads; signing a message then only requires to compute
+ * the digest and to perform the private key operation.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecSigningContext {
+
+	private final X509Certificate certificate;
+	private final PrivateKey privateKey;
+
+	private final SecSignaturePolicy policy;
+
+	// signature and digest algorithm URI
+	private final String sigAlgo;
+	private final String digestAlgo;
+
+	// Base64 encoded certificate (binary security token)
+	private final String encodedCertificate;
+
+	/*
+	 * Signature engines, initialized for signing; an engine is removed
+	 * while in use, and is discarded, if signing fails
+	 */
+	private final ThreadLocal<SignatureAlgorithm> signers = new ThreadLocal<SignatureAlgorithm>();
+
+	static {
+		// initialize apache santuario framework
+		org.apache.xml.security.Init.init();
+	}
+
+	public SecSigningContext(SecCrypto sigCrypto) throws Exception {
+		this(sigCrypto, SecSignaturePolicy.LEGACY);
+	}
+
+	/**
+	 * @param sigCrypto
+	 * @param policy determines the signature and digest algorithm
+	 * @throws Exception
+	 */
+	public SecSigningContext(SecCrypto sigCrypto, SecSignaturePolicy policy) throws Exception {
+
+		if (policy == null) throw new Exception("[SecSigningContext] No signature policy provided.");
+		this.policy = policy;
+
+		this.certificate = sigCrypto.getCertificate();
+		this.privateKey  = sigCrypto.getPrivateKey();
+
+		if (this.certificate == null) throw new Exception("[SecSigningContext] Illegal certificate.");
+		if (this.privateKey  == null) throw new Exception("[SecSigningContext] No private key provided.");
+
+		this.sigAlgo = policy.getSignatureAlgorithm(this.certificate.getPublicKey());
+		if (this.sigAlgo == null) throw new Exception("[SecSigningContext] Unknown signature algorithm.");
+
+		this.digestAlgo = policy.getDigestAlgorithm(this.sigAlgo);
+
+		this.encodedCertificate = SecTokenCache.getEncodedCertificate(this.certificate);
+
+	}
+
+	public X509Certificate getCertificate() {
+		return certificate;
+	}
+
+	public PrivateKey getPrivateKey() {
+		return privateKey;
+	}
+
+	public SecSignaturePolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return the URI of the signature algorithm
+	 */
+	public String getSignatureAlgorithm() {
+		return sigAlgo;
+	}
+
+	/**
+	 * @return the URI of the digest algorithm of the references
+	 */
+	public String getDigestAlgorithm() {
+		return digestAlgo;
+	}
+
+	/**
+	 * @return the Base64 encoded certificate
+	 */
+	public String getEncodedCertificate() {
+		return encodedCertificate;
+	}
+
+	/**
+	 * This method computes the signature value of an XMLSignature,
+	 * that is completely built, with the engine of the current thread.
+	 *
+	 * @param signature
+	 * @throws Exception
+	 */
+	public void sign(XMLSignature signature) throws Exception {
+
+		SignatureAlgorithm signer = signers.get();
+		if (signer == null) {
+			signer = createSigner();
+
+		} else {
+			signers.set(null);
+
+		}
+
+		signature.sign(signer);
+
+		// the engine is only kept, if signing succeeded, as its
+		// state is undefined otherwise
+		signers.set(signer);
+
+	}
+
+	private SignatureAlgorithm createSigner() throws Exception {
+
+		// the signature engine is not bound to a certain message; the
+		// document only holds the (unused) ds:SignatureMethod element
+		DocumentBuilder builder = XMLUtils.createDocumentBuilder();
+
+		Document doc = builder.newDocument();
+		XMLUtils.repoolDocumentBuilder(builder);
+
+		SignatureAlgorithm signer = new SignatureAlgorithm(doc, sigAlgo);
+		signer.initSign(privateKey);
+
+		return signer;
+
+	}
+
+}
@@ -0,0 +1,118 @@
+package de.kp.wsclient.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+
+import org.apache.xml.security.utils.Base64;
+
+import de.kp.wsclient.util.LRUCache;
+
+/**
+ * This class caches the Base64 representation of the certificates,
+ * that are sent as wsse:BinarySecurityToken, and the certificates,
+ * that are decoded from the binary security tokens of inbound messages;
+ * the latter are keyed by a SHA-256 digest of the token text, so that
+ * a cache hit neither requires Base64 decoding nor certificate parsing.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SecTokenCache {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	// Base64 encoded certificates
+	private static LRUCache<X509Certificate,String> encodedCerts = new LRUCache<X509Certificate,String>(DEFAULT_CAPACITY);
+
+	// decoded certificates by digest of the token text
+	private static LRUCache<String,X509Certificate> decodedCerts = new LRUCache<String,X509Certificate>(DEFAULT_CAPACITY);
+
+	private SecTokenCache() {
+	}
+
+	/**
+	 * This method returns the Base64 encoded representation of the
+	 * certificate provided.
+	 *
+	 * @param certificate
+	 * @return
+	 * @throws CertificateEncodingException
+	 */
+	public static String getEncodedCertificate(X509Certificate certificate) throws CertificateEncodingException {
+
+		String encoded = encodedCerts.get(certificate);
+		if (encoded == null) {
+
+			encoded = Base64.encode(certificate.getEncoded());
+			encodedCerts.put(certificate, encoded);
+
+		}
+
+		return encoded;
+
+	}
+
+	/**
+	 * This method returns the certificate, that is represented by
+	 * the Base64 encoded token text provided.
+	 *
+	 * @param encodedData
+	 * @return
+	 * @throws Exception
+	 */
+	public static X509Certificate getCertificate(String encodedData) throws Exception {
+
+		String key = getDigest(encodedData);
+
+		X509Certificate certificate = decodedCerts.get(key);
+		if (certificate != null) return certificate;
+
+		byte[] decodedData;
+		try {
+			decodedData = Base64.decode(encodedData);
+
+		} catch (Exception e) {
+			throw new Exception("X.509 Certificate Decoding Error.");
+
+		}
+
+		certificate = generateCertificate(decodedData);
+		decodedCerts.put(key, certificate);
+
+		return certificate;
+
+	}
+
+	/**
+	 * @return the cache of Base64 encoded certificates
+	 */
+	public static LRUCache<X509Certificate,String> getEncodingCache() {
+		return encodedCerts;
+	}
+
+	/**
+	 * @return the cache of decoded certificates
+	 */
+	public static LRUCache<String,X509Certificate> getDecodingCache() {
+		return decodedCerts;
+	}
+
+	private static X509Certificate generateCertificate(byte[] data) throws CertificateException {
+
+		CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+		return (X509Certificate)certificateFactory.generateCertificate(new ByteArrayInputStream(data));
+
+	}
+
+	private static String getDigest(String encodedData) throws NoSuchAlgorithmException, UnsupportedEncodingException {
+
+		return Base64.encode(SecDigestProvider.digest(SecDigestProvider.SHA256, encodedData.getBytes("UTF-8")));
+
+	}
+
+}
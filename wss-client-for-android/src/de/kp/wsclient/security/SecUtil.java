@@ -1,14 +1,20 @@
 package de.kp.wsclient.security;
 
-import java.security.MessageDigest;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.MGF1ParameterSpec;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.xml.security.algorithms.JCEMapper;
@@ -20,8 +26,6 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 
-import de.kp.wsclient.soap.SOAP11Constants;
-import de.kp.wsclient.soap.SOAP12Constants;
 import de.kp.wsclient.soap.SOAPConstants;
 import de.kp.wsclient.util.UUIDGenerator;
 
@@ -52,9 +56,6 @@ public class SecUtil {
             return prefix + UUIDGenerator.getUUID();
         }
     };
-
-    // A cached MessageDigest object
-    private static MessageDigest digest = null;
     
     public static WsuIdAllocator getIdAllocator() {
         return idAllocator;
@@ -70,13 +71,40 @@ public class SecUtil {
         String ns = doc.getDocumentElement().getNamespaceURI();
         
         if (SecConstants.URI_SOAP12_ENV.equals(ns)) {
-            return new SOAP12Constants();
+            return SOAPConstants.SOAP12_CONSTANTS;
         }
         
-        return new SOAP11Constants();
+        return SOAPConstants.SOAP11_CONSTANTS;
     
     }
 
+    /**
+     * This method retrieves a direct child of the SOAP envelope, i.e. the
+     * soap:Header or soap:Body element; the SOAP version is derived from 
+     * the namespace of the envelope, and the document is not traversed.
+     * 
+     * @param xmlDoc
+     * @param localName
+     * @return
+     */
+    public static Element getSOAPElement(Document xmlDoc, String localName) {
+    	
+    	Element envelope = xmlDoc.getDocumentElement();
+    	if (envelope == null) return null;
+    	
+    	String ns = envelope.getNamespaceURI();
+    	
+    	for (Node child = envelope.getFirstChild(); child != null; child = child.getNextSibling()) {
+    		
+    		if (child.getNodeType() != Node.ELEMENT_NODE) continue;
+    		if (localName.equals(child.getLocalName()) && ns != null && ns.equals(child.getNamespaceURI())) return (Element)child;
+    	
+    	}
+    	
+    	return null;
+    	
+    }
+
     /**
      * This method create a base64 test node.
      * 
@@ -115,18 +143,17 @@ public class SecUtil {
 
     /**
      * Generate a (SHA1) digest of the input bytes. The MessageDigest 
-     * instance that backs this method is cached for efficiency.  
+     * instance that backs this method is kept per thread by the
+     * SecDigestProvider, i.e. concurrent invocations do not block.
      * 
      * @param inputBytes
      * @return
      * @throws Exception
      */
-    public static synchronized byte[] generateDigest(byte[] inputBytes) throws Exception {
+    public static byte[] generateDigest(byte[] inputBytes) throws Exception {
         
     	try {
-        
-    		if (digest == null) digest = MessageDigest.getInstance("SHA-1");
-    		return digest.digest(inputBytes);
+    		return SecDigestProvider.digest(SecDigestProvider.SHA1, inputBytes);
         
     	} catch (Exception e) {
             throw new Exception("[SecUtil] Error in generating digest");
@@ -314,10 +341,18 @@ public class SecUtil {
      * If checkMultipleElements is true and there are multiple 
      * elements, we log a warning and return null as this can 
      * be used to get around the signature checking.
+     * 
+     * A lookup, that starts at the document element, is resolved
+     * from the SecIdIndex of the document.
      */
 
     public static Element findElementById(Node startNode, String value, boolean checkMultipleElements) {
 
+        Document doc = startNode.getOwnerDocument();
+        if (doc != null && startNode == doc.getDocumentElement()) {
+            return SecIdIndex.getIndex(doc).getElement(value, checkMultipleElements);
+        }
+
     	//
         // Replace the formerly recursive implementation with a depth-first-loop lookup
         //
@@ -421,6 +456,62 @@ public class SecUtil {
     	}
     }
 
+    /**
+     * This method encrypts (wraps) a symmetric key with the public key
+     * of the recipient; the key transport algorithm is either RSA 1.5
+     * or RSA-OAEP (MGF1 with SHA-1).
+     * 
+     * @param secretKey
+     * @param keyEncAlgo
+     * @param publicKey
+     * @return
+     * @throws Exception
+     */
+    public static byte[] wrapKey(SecretKey secretKey, String keyEncAlgo, PublicKey publicKey) throws Exception {
+
+    	Cipher cipher = getCipherInstance(keyEncAlgo);
+    	try {
+    		
+    		if (SecConstants.KEYTRANSPORT_RSAOEP.equals(keyEncAlgo)) {
+    			OAEPParameterSpec oaepParameterSpec = new OAEPParameterSpec("SHA-1", "MGF1", new MGF1ParameterSpec("SHA-1"), PSource.PSpecified.DEFAULT);
+    			cipher.init(Cipher.WRAP_MODE, publicKey, oaepParameterSpec);
+    			
+    		} else {
+    			// this is the default way to initialize the Cipher instance
+    			cipher.init(Cipher.WRAP_MODE, publicKey);
+
+    		}
+    		
+    		return cipher.wrap(secretKey);
+
+    	} catch (InvalidKeyException e) {
+    		throw new Exception("[SecUtil] Encryption failed: " + e.getMessage());
+
+    	} catch (InvalidAlgorithmParameterException e) {
+    		throw new Exception("[SecUtil] Encryption failed: " + e.getMessage());
+
+    	} catch (IllegalStateException e) {
+    		throw new Exception("[SecUtil] Encryption failed: " + e.getMessage());
+
+    	} catch (IllegalBlockSizeException e) {
+    		throw new Exception("[SecUtil] Encryption failed: " + e.getMessage());
+
+    	}
+    	
+    }
+
+    /**
+     * @param symEncAlgo
+     * @return true, if the content encryption algorithm is supported, 
+     * i.e. AES-128/192/256 in CBC or GCM mode
+     */
+    public static boolean isSupportedEncAlgorithm(String symEncAlgo) {
+    	
+    	return SecConstants.AES_128.equals(symEncAlgo) || SecConstants.AES_192.equals(symEncAlgo) || SecConstants.AES_256.equals(symEncAlgo)
+    		|| SecConstants.AES_128_GCM.equals(symEncAlgo) || SecConstants.AES_192_GCM.equals(symEncAlgo) || SecConstants.AES_256_GCM.equals(symEncAlgo);
+    
+    }
+
     public static String getKeyAlgorithm(String symEncAlgo) {
 
     	String keyAlgorithm = JCEMapper.getJCEKeyAlgorithmFromURI(symEncAlgo);
@@ -1,16 +1,18 @@
 package de.kp.wsclient.security;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.ExecutorService;
+
+import javax.crypto.SecretKey;
 
 import org.apache.xml.security.keys.KeyInfo;
+import org.apache.xml.security.signature.SignedInfo;
 import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.utils.Base64;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -30,6 +32,11 @@ import org.w3c.dom.NodeList;
  * The method then checks if the certificate is valid; to this end the function
  * org.apache.xml.security.signature.XMLSignature#checkSignatureValue(X509Certificate) 
  * is invoked.
+ * 
+ * HMAC signatures (symmetric binding) refer to a session key, either by
+ * a reference to the xenc:EncryptedKey of the message, or by its
+ * EncryptedKeySHA1 identifier; the session key is taken from the
+ * SecSessionContext provided.
  */
 
 public class SecValidator {
@@ -39,7 +46,38 @@ public class SecValidator {
     	org.apache.xml.security.Init.init();
     }
 
+    // restricts the accepted signature and digest algorithms
+    private SecSignaturePolicy policy;
+    
+    // session keys of the symmetric binding
+    private SecSessionContext session;
+    
+    // computes the digests of the signed parts in parallel
+    private ExecutorService executor;
+    
     public SecValidator() {	
+    	this(SecSignaturePolicy.LEGACY);
+    }
+	
+    public SecValidator(SecSignaturePolicy policy) {	
+    	this.policy = (policy == null) ? SecSignaturePolicy.LEGACY : policy;
+    }
+	
+    public SecValidator(SecSessionContext session) {	
+    	this(session.getPolicy());
+    	this.session = session;
+    }
+	
+    /**
+     * This method enables the parallel verification of the references
+     * of a signature; the digests of signatures, that cover fewer parts
+     * than the parallel threshold of the Manifest, are still computed
+     * sequentially.
+     * 
+     * @param executor the executor, or null to verify sequentially
+     */
+    public void setExecutor(ExecutorService executor) {
+    	this.executor = executor;
     }
 	
     public Document verify(Document xmlDoc) throws Exception {
@@ -52,6 +90,13 @@ public class SecValidator {
 
 	    // create signature element		    
 	    XMLSignature signature = new XMLSignature(sigElement, null);
+	    if (executor != null) signature.getSignedInfo().setVerificationExecutor(executor);
+
+	    // check signature and digest algorithms against the policy
+	    checkAlgorithms(signature);
+
+	    // check that the referenced parts are unique
+	    checkReferences(xmlDoc, signature);
 
 	    // acquire KeyInfo
         
@@ -71,6 +116,16 @@ public class SecValidator {
         Element refElement = getFirstElement((Element)secTokenRef);
         if (refElement == null) throw new Exception("Invalid security reference.");
 
+	    // HMAC signatures are checked with the session key
+	    if (SecSignaturePolicy.isSymmetricAlgorithm(signature.getSignedInfo().getSignatureMethodURI())) {
+	    	
+	    	valid = signature.checkSignatureValue(getSessionKey(xmlDoc, refElement));
+		    if (valid == false) throw new Exception("Invalid signature found.");
+		    
+		    return xmlDoc;
+	    	
+	    }
+
         SecReference ref = new SecReference(refElement);
         String refURI  = ref.getURI();
 
@@ -109,8 +164,107 @@ public class SecValidator {
 	    
 	}
 
+    private void checkAlgorithms(XMLSignature signature) throws Exception {
+    	
+    	SignedInfo signedInfo = signature.getSignedInfo();
+    	
+    	String sigAlgo = signedInfo.getSignatureMethodURI();
+    	if (policy.isAcceptedSignatureAlgorithm(sigAlgo) == false) throw new Exception("Signature algorithm not accepted: " + sigAlgo);
+    	
+    	for (int i = 0; i < signedInfo.getLength(); i++) {
+    		
+    		Element digestMethod = XMLUtils.selectDsNode(signedInfo.item(i).getElement().getFirstChild(), Constants._TAG_DIGESTMETHOD, 0);
+    		String digestAlgo = (digestMethod == null) ? null : digestMethod.getAttributeNS(null, Constants._ATT_ALGORITHM);
+    		
+    		if (policy.isAcceptedDigestAlgorithm(digestAlgo) == false) throw new Exception("Digest algorithm not accepted: " + digestAlgo);
+    		
+    	}
+    	
+    }
+    
+    /**
+     * This method resolves the same-document references of the signature
+     * from the identifier index of the document; this registers the
+     * identifiers for the Apache Santuario framework, and rejects
+     * references to identifiers, that are assigned to more than one
+     * element (XML signature wrapping).
+     * 
+     * @param xmlDoc
+     * @param signature
+     * @throws Exception
+     */
+    private void checkReferences(Document xmlDoc, XMLSignature signature) throws Exception {
+    	
+    	SecIdIndex index = SecIdIndex.getIndex(xmlDoc);
+    	SignedInfo signedInfo = signature.getSignedInfo();
+    	
+    	for (int i = 0; i < signedInfo.getLength(); i++) {
+    		
+    		String uri = signedInfo.item(i).getURI();
+    		if (uri == null || uri.startsWith("#") == false || uri.startsWith("#xpointer(")) continue;
+    		
+    		if (index.getElement(uri, true) == null) throw new Exception("Invalid reference: " + uri);
+    		
+    	}
+    	
+    }
+    
+    /**
+     * This method determines the session key from the security token
+     * reference of a HMAC signature.
+     * 
+     * @param xmlDoc
+     * @param refElement
+     * @return
+     * @throws Exception
+     */
+    private SecretKey getSessionKey(Document xmlDoc, Element refElement) throws Exception {
+    	
+    	if (session == null) throw new Exception("No session context provided.");
+    	
+    	String encryptedKeySHA1 = null;
+    	if (SecConstants.KEY_IDENTIFIER.equals(refElement.getLocalName()) && SecConstants.WSSE_NS.equals(refElement.getNamespaceURI())) {
+    		
+    		// <wsse:KeyIdentifier ValueType="...#EncryptedKeySHA1">
+    		if (SecConstants.WSS_ENC_KEY_SHA1_VALUE_TYPE.equals(refElement.getAttribute("ValueType")) == false)
+    			throw new Exception("Invalid key identifier.");
+    		
+    		encryptedKeySHA1 = refElement.getTextContent().trim();
+    		
+    	} else {
+    		
+    		// <wsse:Reference URI="#EK-..." ValueType="...#EncryptedKey">
+    		SecReference ref = new SecReference(refElement);
+    		if (SecConstants.WSS_ENC_KEY_VALUE_TYPE.equals(ref.getValueType()) == false)
+    			throw new Exception("Invalid reference value type.");
+    		
+    		String refURI = ref.getURI();
+    		String refID  = (refURI.charAt(0) == '#') ? refURI.substring(1) : null;
+    		
+    		Element encryptedKey = SecEnvelopeIndex.getIndex(xmlDoc).getEncryptedKey(refID);
+    		if (encryptedKey == null) throw new Exception("No Encrypted Key");
+    		
+    		Element cipherData  = SecUtil.getDirectChildElement(encryptedKey, "CipherData", SecConstants.ENC_NS);
+    		Element cipherValue = (cipherData == null) ? null : SecUtil.getDirectChildElement(cipherData, "CipherValue", SecConstants.ENC_NS);
+    		
+    		if (cipherValue == null) throw new Exception("Invalid Encrypted Key");
+    		encryptedKeySHA1 = Base64.encode(SecUtil.generateDigest(Base64.decode(cipherValue)));
+    		
+    	}
+    	
+    	SecSessionKey sessionKey = session.getKey(encryptedKeySHA1);
+    	if (sessionKey == null) throw new Exception("Unknown session key.");
+    	
+    	return sessionKey.getSecretKey();
+    	
+    }
+    
     private Element getSignature(Document xmlDoc) throws Exception {
 
+    	Element sigElement = SecEnvelopeIndex.getIndex(xmlDoc).getSignature();
+    	if (sigElement != null) return sigElement;
+    	
+    	// the signature is not part of the security header
 	    NodeList nodes = xmlDoc.getElementsByTagNameNS(Constants.SignatureSpecNS, SecConstants.SIGNATURE);
 	    if (nodes.getLength() == 0) return null;
 
@@ -119,16 +273,7 @@ public class SecValidator {
     }
 
     private Element getBSToken(Document xmlDoc, String tokenID) {
-
-	    NodeList nodes = xmlDoc.getElementsByTagNameNS(SecConstants.WSSE_NS, SecConstants.BINARY_TOKEN_LN);
-	    if (nodes.getLength() == 0) return null;
-
-		Element element = (Element) nodes.item(0);		
-        if (element.hasAttributeNS(SecConstants.WSU_NS, "Id") && tokenID.equals(element.getAttributeNS(SecConstants.WSU_NS, "Id")))
-        	return element;
-		
-		return null;
-		
+		return SecEnvelopeIndex.getIndex(xmlDoc).getBinarySecurityToken(tokenID);
 	}
 
 	// this method retrieves the X.509 certificate from the <wsse:BinarySecurityToken>
@@ -136,36 +281,15 @@ public class SecValidator {
 	private X509Certificate getX509Certificate(Element element) throws Exception {
 
 		String encodedData = element.getFirstChild().getNodeValue();
-		byte[] decodedData;
-		
-		try {
-			decodedData = Base64.decode(encodedData);
-
-		} catch (Exception e) {
-			throw new Exception("X.509 Certificate Decoding Error.");
-		
-		}
-
         X509Certificate cert = null;
-        InputStream is = null;
 
         try {
-
-        	CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
-
-            is = new ByteArrayInputStream(decodedData);
-        	cert = (X509Certificate)certificateFactory.generateCertificate(is);
+        	// repeated tokens are neither decoded nor parsed again
+        	cert = SecTokenCache.getCertificate(encodedData);
 
         } catch (CertificateException e) {
         	e.printStackTrace();
 
-        } finally {
-        	if (is != null) {
-        		try {
-        			is.close();
-        		} catch (Exception e) {
-        		}
-        	}
         }
 
         return cert;
@@ -204,4 +328,4 @@ public class SecValidator {
 
      	return null;
      }
-}
\ No newline at end of file
+}
\ No newline at end of file
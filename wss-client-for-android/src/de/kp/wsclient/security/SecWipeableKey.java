@@ -0,0 +1,68 @@
+package de.kp.wsclient.security;
+
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+import javax.security.auth.Destroyable;
+
+/**
+ * This class is a symmetric key, whose key material can be wiped;
+ * it is used for keys, that are kept by the {@link SecKeyCache}, as
+ * a SecretKeySpec does not support to overwrite its key bytes.
+ *
+ * The cache hands out copies of the key material only; the copies are
+ * short-lived and bound to a single message.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+class SecWipeableKey implements SecretKey, Destroyable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String algorithm;
+	private final byte[] key;
+
+	private volatile boolean destroyed = false;
+
+	SecWipeableKey(SecretKey secretKey) {
+		this(secretKey.getEncoded(), secretKey.getAlgorithm());
+	}
+
+	SecWipeableKey(byte[] key, String algorithm) {
+
+		this.key = key.clone();
+		this.algorithm = algorithm;
+
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public String getFormat() {
+		return "RAW";
+	}
+
+	public byte[] getEncoded() {
+
+		if (destroyed) throw new IllegalStateException("[SecWipeableKey] Key has been destroyed.");
+		return key.clone();
+
+	}
+
+	/**
+	 * This method overwrites the key material with zeros.
+	 */
+	public void destroy() {
+
+		Arrays.fill(key, (byte)0);
+		destroyed = true;
+
+	}
+
+	public boolean isDestroyed() {
+		return destroyed;
+	}
+
+}
@@ -0,0 +1,137 @@
+package de.kp.wsclient.soap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * This class wraps the entity of an HTTP response, that is encoded with
+ * gzip or deflate, and decompresses the content while it is read; the
+ * compressed response is never held in memory as a whole.
+ * 
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class DecompressingEntity extends HttpEntityWrapper {
+
+	public static final String GZIP    = "gzip";
+	public static final String DEFLATE = "deflate";
+	
+	private static final int BUFFER_SIZE = 4096;
+
+	private String encoding;
+	
+	public DecompressingEntity(HttpEntity entity, String encoding) {
+		super(entity);
+		this.encoding = encoding;
+	}
+
+	/**
+	 * This method wraps the entity provided, if it is encoded with
+	 * gzip or deflate; other entities are returned unchanged.
+	 * 
+	 * @param entity
+	 * @return
+	 */
+	public static HttpEntity wrap(HttpEntity entity) {
+		
+		if (entity == null) return null;
+		
+		Header header = entity.getContentEncoding();
+		if (header == null) return entity;
+		
+		String encoding = header.getValue().trim().toLowerCase();
+		if (encoding.equals(GZIP) || encoding.equals("x-gzip")) return new DecompressingEntity(entity, GZIP);
+		if (encoding.equals(DEFLATE)) return new DecompressingEntity(entity, DEFLATE);
+		
+		return entity;
+		
+	}
+	
+	/**
+	 * The stream returned closes the wrapped stream, and thereby
+	 * releases the HTTP connection, when it is closed.
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+	
+		InputStream content = wrappedEntity.getContent();
+		if (encoding.equals(GZIP)) return new GZIPInputStream(content, BUFFER_SIZE);
+		
+		/*
+		 * "deflate" is specified as zlib format (RFC 1950), but some
+		 * servers send raw deflate data (RFC 1951); the zlib header
+		 * is detected from the first two bytes
+		 */
+		PushbackInputStream pushback = new PushbackInputStream(content, 2);
+
+		int b0 = pushback.read();
+		int b1 = (b0 == -1) ? -1 : pushback.read();
+		
+		if (b1 != -1) pushback.unread(b1);
+		if (b0 != -1) pushback.unread(b0);
+		
+		boolean zlib = (b0 != -1 && b1 != -1) && ((b0 & 0x0F) == 8) && (((b0 << 8) | b1) % 31 == 0);
+		final Inflater inflater = new Inflater(zlib == false);
+
+		// an inflater provided by the caller is not released by the stream
+		return new InflaterInputStream(pushback, inflater, BUFFER_SIZE) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+		
+	}
+
+	/**
+	 * The decompressed length is unknown.
+	 */
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	/**
+	 * The content is no longer encoded.
+	 */
+	@Override
+	public Header getContentEncoding() {
+		return null;
+	}
+
+	@Override
+	public void writeTo(OutputStream output) throws IOException {
+
+		if (output == null) throw new IllegalArgumentException("Output stream may not be null");
+		InputStream content = getContent();
+		
+		try {
+
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+
+			while ((count = content.read(buffer)) != -1) {
+				output.write(buffer, 0, count);
+			}
+
+		} finally {
+			content.close();
+		}
+		
+	}
+
+}
@@ -0,0 +1,73 @@
+package de.kp.wsclient.soap;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+
+/**
+ * This daemon thread periodically closes pooled connections, that
+ * have expired (see keep-alive) or have been idle for too long; this
+ * avoids re-using connections that were silently dropped by a server
+ * or an intermediate proxy.
+ * 
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+class IdleConnectionReaper extends Thread {
+
+	private ClientConnectionManager connManager;
+	
+	/* Time in milliseconds between two runs */
+	private long interval;
+	
+	/* Idle time in milliseconds, after which a connection is closed */
+	private long idleTimeout;
+	
+	private volatile boolean shutdown = false;
+	
+	public IdleConnectionReaper(ClientConnectionManager connManager, long interval, long idleTimeout) {
+		
+		super("SOAPSender-ConnectionReaper");
+		setDaemon(true);
+		
+		this.connManager = connManager;
+		
+		this.interval    = interval;
+		this.idleTimeout = idleTimeout;
+		
+	}
+
+	@Override
+	public void run() {
+
+		try {
+			
+			while (shutdown == false) {
+
+				synchronized (this) {
+					wait(interval);
+				}
+				
+				if (shutdown == true) break;
+				
+				connManager.closeExpiredConnections();
+				connManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+			
+			}
+		
+		} catch (InterruptedException e) {
+			// terminate
+		}
+		
+	}
+	
+	public void shutdown() {
+
+		shutdown = true;
+		synchronized (this) {
+			notifyAll();
+		}
+
+	}
+	
+}
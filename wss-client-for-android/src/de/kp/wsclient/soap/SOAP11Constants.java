@@ -42,6 +42,10 @@ public class SOAP11Constants implements SOAPConstants {
         return SecConstants.URI_SOAP11_ENV;
     }
 
+    public String getContentType() {
+        return "text/xml";
+    }
+
     public QName getHeaderQName() {
         return headerQName;
     }
@@ -49,6 +49,10 @@ public class SOAP12Constants implements SOAPConstants {
         return SecConstants.URI_SOAP12_ENV;
     }
 
+    public String getContentType() {
+        return "application/soap+xml";
+    }
+
     public QName getHeaderQName() {
         return headerQName;
     }
@@ -0,0 +1,28 @@
+package de.kp.wsclient.soap;
+
+/**
+ * This interface is notified when an asynchronous SOAP request
+ * has completed; the methods are invoked on the worker thread,
+ * that processed the request.
+ * 
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public interface SOAPCallback<V> {
+
+	/**
+	 * Invoked with the result of a successful request
+	 * 
+	 * @param result
+	 */
+	public void onSuccess(V result);
+
+	/**
+	 * Invoked if the request failed or has been cancelled; in the
+	 * latter case, the exception is a CancellationException
+	 * 
+	 * @param e
+	 */
+	public void onFailure(Exception e);
+
+}
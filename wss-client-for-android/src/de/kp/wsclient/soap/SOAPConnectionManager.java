@@ -0,0 +1,67 @@
+package de.kp.wsclient.soap;
+
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.AbstractConnPool;
+import org.apache.http.impl.conn.tsccm.ConnPoolByRoute;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
+
+/**
+ * This connection manager is a {@link ThreadSafeClientConnManager}, that
+ * exposes the state of its connection pool; pool sizing is controlled by
+ * the ConnManagerParams of the HTTP parameters provided.
+ * 
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+class SOAPConnectionManager extends ThreadSafeClientConnManager {
+
+	private int maxTotal;
+	
+	public SOAPConnectionManager(HttpParams params, SchemeRegistry schemeRegistry) {
+
+		super(params, schemeRegistry);
+		this.maxTotal = ConnManagerParams.getMaxTotalConnections(params);
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected AbstractConnPool createConnectionPool(HttpParams params) {
+		return new SOAPConnPool(connOperator, params);
+	}
+
+	/**
+	 * @return a snapshot of the connection pool
+	 */
+	public SOAPPoolStats getPoolStats() {
+		return ((SOAPConnPool)connectionPool).getPoolStats(maxTotal);
+	}
+
+	private static class SOAPConnPool extends ConnPoolByRoute {
+
+		public SOAPConnPool(ClientConnectionOperator operator, HttpParams params) {
+			super(operator, params);
+		}
+		
+		public SOAPPoolStats getPoolStats(int maxTotal) {
+			
+			poolLock.lock();
+			try {
+				
+				int available = freeConnections.size();
+				return new SOAPPoolStats(numConnections - available, available, waitingThreads.size(), maxTotal);
+			
+			} finally {
+				poolLock.unlock();
+			}
+			
+		}
+		
+	}
+	
+}
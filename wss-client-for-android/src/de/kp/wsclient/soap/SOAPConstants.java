@@ -49,6 +49,11 @@ public interface SOAPConstants extends Serializable {
      */
     public String getEnvelopeURI();
 
+    /**
+     * Obtain the media type of a message for this version of SOAP
+     */
+    public String getContentType();
+
     /**
      * Obtain the QName for the Header element
      */
@@ -0,0 +1,351 @@
+package de.kp.wsclient.soap;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.w3c.dom.Document;
+
+import de.kp.wsclient.util.PooledByteArrayOutputStream;
+import de.kp.wsclient.xml.XMLSerializer;
+
+/**
+ * This class is an HTTP entity, that writes the W3C DOM document of a
+ * SOAP message directly to the output stream of the HTTP connection;
+ * in contrast to a StringEntity, no serialized copy of the message is
+ * held in memory.
+ *
+ * By default the entity is sent with chunked transfer encoding; if
+ * the content length has to be provided up front (e.g. for servers
+ * that do not accept chunked requests), the message is serialized
+ * once and the respective bytes are used to determine the length.
+ *
+ * A message, that exceeds a certain size, may be sent gzip compressed;
+ * to determine the size, the message is serialized into a buffer, that
+ * is bounded by the compression threshold. A smaller message is sent
+ * from this buffer, while a larger one is serialized again and streamed
+ * through the gzip compressor, unless a content length is required.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SOAPEntity extends AbstractHttpEntity {
+
+	public static final String GZIP = "gzip";
+
+	private Document xmlDoc;
+
+	/*
+	 * Serialized representation of the SOAP message; this is
+	 * only used if the content length is pre-computed
+	 */
+	private byte[] content;
+
+	// indicates whether the message is sent gzip compressed
+	private boolean compressed = false;
+
+	/**
+	 * Constructor SOAPEntity; the entity is sent in chunked mode
+	 *
+	 * @param message
+	 */
+	public SOAPEntity(SOAPMessage message) {
+		this.xmlDoc = message.getXMLDoc();
+		setChunked(true);
+	}
+
+	/**
+	 * Constructor SOAPEntity
+	 *
+	 * @param message
+	 * @param computeLength
+	 * @throws IOException
+	 */
+	public SOAPEntity(SOAPMessage message, boolean computeLength) throws IOException {
+
+		this.xmlDoc = message.getXMLDoc();
+
+		if (computeLength == true) {
+			this.content = toBytes();
+
+		} else {
+			setChunked(true);
+		}
+
+	}
+
+	/**
+	 * Constructor SOAPEntity; the message is compressed, if its
+	 * serialized representation exceeds the threshold provided,
+	 * and the content length is pre-computed
+	 *
+	 * @param message
+	 * @param compressionThreshold
+	 *            Minimum size in bytes of a message to be compressed
+	 * @throws IOException
+	 */
+	public SOAPEntity(SOAPMessage message, int compressionThreshold) throws IOException {
+		this(message, compressionThreshold, true);
+	}
+
+	/**
+	 * Constructor SOAPEntity; the message is compressed, if its
+	 * serialized representation exceeds the threshold provided.
+	 * A compressed message is sent in chunked mode, unless the
+	 * content length has to be computed; a smaller message is
+	 * always sent with its content length.
+	 *
+	 * @param message
+	 * @param compressionThreshold
+	 *            Minimum size in bytes of a message to be compressed
+	 * @param computeLength
+	 * @throws IOException
+	 */
+	public SOAPEntity(SOAPMessage message, int compressionThreshold, boolean computeLength) throws IOException {
+
+		this.xmlDoc = message.getXMLDoc();
+		this.content = toBytes(compressionThreshold);
+
+		if (this.content == null) {
+
+			this.compressed = true;
+			setContentEncoding(GZIP);
+
+			if (computeLength == true) {
+				this.content = compress();
+
+			} else {
+				setChunked(true);
+			}
+
+		}
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	/**
+	 * The content length is unknown (-1), if the entity
+	 * is sent in chunked mode.
+	 */
+	@Override
+	public long getContentLength() {
+		return (this.content == null) ? -1 : this.content.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		
+		if (this.content != null) return new ByteArrayInputStream(this.content);
+		return new ByteArrayInputStream(this.compressed ? compress() : toBytes());
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeTo(OutputStream output) throws IOException {
+
+		if (output == null) throw new IllegalArgumentException("Output stream may not be null");
+
+		if (this.content == null) {
+
+			if (this.compressed) {
+				// the connection stream must not be closed
+				writeCompressed(new ShieldedOutputStream(output));
+
+			} else {
+				serialize(output);
+			}
+
+		} else {
+			output.write(this.content);
+		}
+
+		output.flush();
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	private byte[] toBytes() throws IOException {
+
+		try {
+			return XMLSerializer.serializeToBytes(this.xmlDoc);
+
+		} catch (TransformerException e) {
+			throw new IOException("[SOAPEntity] Serialization failed: " + e.getMessage());
+
+		}
+
+	}
+
+	/**
+	 * This method serializes the message into a buffer, that is
+	 * bounded by the limit provided; the serialization is stopped
+	 * as soon as the limit is reached.
+	 *
+	 * @param limit
+	 * @return the serialized message, or null, if it reaches the limit
+	 * @throws IOException
+	 */
+	private byte[] toBytes(int limit) throws IOException {
+
+		BoundedOutputStream output = new BoundedOutputStream(limit);
+		try {
+			XMLSerializer.serialize(this.xmlDoc, output);
+			return output.toByteArray();
+
+		} catch (TransformerException e) {
+
+			if (output.isExceeded()) return null;
+			throw new IOException("[SOAPEntity] Serialization failed: " + e.getMessage());
+
+		} finally {
+			output.release();
+		}
+
+	}
+
+	private byte[] compress() throws IOException {
+
+		PooledByteArrayOutputStream output = new PooledByteArrayOutputStream();
+		try {
+
+			// closing the pooled output stream has no effect
+			writeCompressed(output);
+			return output.toByteArray();
+
+		} finally {
+			output.release();
+		}
+
+	}
+
+	/**
+	 * This method serializes the message through a gzip compressor
+	 * into the output stream provided; the output stream is closed.
+	 *
+	 * @param output
+	 * @throws IOException
+	 */
+	private void writeCompressed(OutputStream output) throws IOException {
+
+		GZIPOutputStream gzip = new GZIPOutputStream(output);
+		try {
+
+			serialize(gzip);
+			gzip.finish();
+
+		} finally {
+			// ends the Deflater, which holds native memory
+			gzip.close();
+		}
+
+	}
+
+	private void serialize(OutputStream output) throws IOException {
+
+		try {
+			XMLSerializer.serialize(this.xmlDoc, output);
+
+		} catch (TransformerException e) {
+			throw new IOException("[SOAPEntity] Serialization failed: " + e.getMessage());
+
+		}
+
+	}
+
+	/**
+	 * An output stream, that keeps the bytes written up to a certain
+	 * limit; reaching the limit aborts the serialization.
+	 */
+	private static class BoundedOutputStream extends OutputStream {
+
+		private PooledByteArrayOutputStream buffer = new PooledByteArrayOutputStream();
+
+		private int limit;
+		private boolean exceeded = false;
+
+		public BoundedOutputStream(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte)b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+
+			if (this.buffer.size() + len >= this.limit) {
+
+				this.exceeded = true;
+				throw new IOException("[SOAPEntity] Compression threshold reached.");
+
+			}
+
+			this.buffer.write(b, off, len);
+
+		}
+
+		public boolean isExceeded() {
+			return this.exceeded;
+		}
+
+		public byte[] toByteArray() {
+			return this.buffer.toByteArray();
+		}
+
+		public void release() {
+			this.buffer.release();
+		}
+
+	}
+
+	/**
+	 * An output stream, that does not close the underlying stream
+	 * (i.e. the stream of the HTTP connection), but flushes it.
+	 */
+	private static class ShieldedOutputStream extends FilterOutputStream {
+
+		public ShieldedOutputStream(OutputStream output) {
+			super(output);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+	}
+
+}
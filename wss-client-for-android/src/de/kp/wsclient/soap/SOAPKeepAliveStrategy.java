@@ -0,0 +1,34 @@
+package de.kp.wsclient.soap;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * This strategy keeps a persistent connection alive for the duration
+ * announced by the server's Keep-Alive header, but never longer than
+ * the configured maximum; without such a header, the maximum is used.
+ * 
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+class SOAPKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+	private ConnectionKeepAliveStrategy serverStrategy = new DefaultConnectionKeepAliveStrategy();
+	
+	/* Maximum keep-alive duration in milliseconds */
+	private long keepAlive;
+	
+	public SOAPKeepAliveStrategy(long keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+	
+	public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+
+		long duration = serverStrategy.getKeepAliveDuration(response, context);
+		return (duration < 0 || duration > keepAlive) ? keepAlive : duration;
+		
+	}
+
+}
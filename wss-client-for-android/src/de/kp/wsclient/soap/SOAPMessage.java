@@ -5,19 +5,25 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import de.kp.wsclient.security.SecConstants;
 import de.kp.wsclient.security.SecCrypto;
 import de.kp.wsclient.security.SecDecryptor;
 import de.kp.wsclient.security.SecEncryptor;
+import de.kp.wsclient.security.SecEnvelopeIndex;
+import de.kp.wsclient.security.SecSessionContext;
+import de.kp.wsclient.security.SecSessionKey;
 import de.kp.wsclient.security.SecSignature;
+import de.kp.wsclient.security.SecSignaturePolicy;
+import de.kp.wsclient.security.SecSigningContext;
+import de.kp.wsclient.security.SecUtil;
 import de.kp.wsclient.security.SecValidator;
 import de.kp.wsclient.util.UUIDGenerator;
 import de.kp.wsclient.xml.XMLSerializer;
@@ -26,41 +32,71 @@ public class SOAPMessage {
 
 	private Document xmlDoc;
 	
+	/*
+	 * The SOAP version of this message; the soap:Header and soap:Body
+	 * elements are looked up once and kept with the message
+	 */
+	private SOAPConstants soapConstants;
+	
 	private Element header;
 	private Element body;
 	
 	private String bodyId = "BE-" + UUIDGenerator.getUUID();
 	
-	// this constructor is used to build a new SOAP message;
-	// use case: outgoing SOAP message
+	// signature and digest algorithms used for signing (without
+	// a signing context) and accepted for verification
+	private SecSignaturePolicy signaturePolicy = SecSignaturePolicy.LEGACY;
+	
+	// content encryption algorithm (AES-CBC or AES-GCM)
+	private String encryptionAlgorithm = SecConstants.AES_128;
 	
-	//private static String SOAP_NS = SecConstants.URI_SOAP12_ENV;
-	private static String SOAP_NS = SecConstants.URI_SOAP11_ENV;
+	// session context and key of a HMAC signature; the delivery
+	// of the message establishes the session key
+	private SecSessionContext session;
+	private SecSessionKey sessionKey;
+	
+	// this constructor is used to build a new SOAP 1.1 message;
+	// use case: outgoing SOAP message
 	
 	public SOAPMessage() {
+		this(SOAPConstants.SOAP11_CONSTANTS);
+	}
+
+	/**
+	 * Constructor SOAPMessage; this constructor is used to build a 
+	 * new SOAP message of a certain SOAP version
+	 * 
+	 * @param soapConstants
+	 *            SOAPConstants.SOAP11_CONSTANTS or SOAPConstants.SOAP12_CONSTANTS
+	 */
+	public SOAPMessage(SOAPConstants soapConstants) {
+		
+		this.soapConstants = soapConstants;
+		String soapNS = soapConstants.getEnvelopeURI();
 		
-	    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-	    factory.setNamespaceAware(true);
-	    
 	    try {
 
-	    	xmlDoc = factory.newDocumentBuilder().newDocument();
+	    	// the document builder is taken from a per-thread pool
+	    	DocumentBuilder builder = XMLUtils.createDocumentBuilder();
+
+	    	xmlDoc = builder.newDocument();
+	    	XMLUtils.repoolDocumentBuilder(builder);
 	    		    	
 	    	// create SOAP envelope
 	    	String envelopeName = SecConstants.SOAP_PRE + ":" + SecConstants.ELEM_ENVELOPE;
-	    	Element envelope = xmlDoc.createElementNS(SOAP_NS, envelopeName);
+	    	Element envelope = xmlDoc.createElementNS(soapNS, envelopeName);
 	    	
 	    	xmlDoc.appendChild(envelope);
 
 	    	// create SOAP header
 	    	String headerName = SecConstants.SOAP_PRE + ":" + SecConstants.ELEM_HEADER;
-	    	header = xmlDoc.createElementNS(SOAP_NS, headerName);
+	    	header = xmlDoc.createElementNS(soapNS, headerName);
 	    	
 	    	envelope.appendChild(header);
 	    	
 	    	// create SOAP body
 	    	String bodyName = SecConstants.SOAP_PRE + ":" + SecConstants.ELEM_BODY;
-	    	body = xmlDoc.createElementNS(SOAP_NS, bodyName);
+	    	body = xmlDoc.createElementNS(soapNS, bodyName);
 	    	
 	    	body.setAttribute("id", bodyId);
 	    	
@@ -100,11 +136,7 @@ public class SOAPMessage {
 	 */
 	public SOAPMessage(Document xmlDoc) {
 
-		this.xmlDoc = xmlDoc;
-
-		this.header = getSOAPElement(xmlDoc, SecConstants.ELEM_HEADER);		    
-		this.body   = getSOAPElement(xmlDoc, SecConstants.ELEM_BODY);
-
+		setXMLDoc(xmlDoc);
 	}
     
 	/**
@@ -112,20 +144,18 @@ public class SOAPMessage {
 	 */
 	private void setSOAPMessageFromIS(InputStream is) {
 
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		factory.setNamespaceAware(true);
+		DocumentBuilder builder = null;
 
 		try {
 	    
-			this.xmlDoc = factory.newDocumentBuilder().parse(is);
-	    
-			this.header = getSOAPElement(xmlDoc, SecConstants.ELEM_HEADER);		    
-			this.body   = getSOAPElement(xmlDoc, SecConstants.ELEM_BODY);
+			builder = XMLUtils.createDocumentBuilder();
+			setXMLDoc(builder.parse(is));
 	    
 	   } catch (Exception e) {
 		   e.printStackTrace();
 	    
 	   } finally {
+		   XMLUtils.repoolDocumentBuilder(builder);
 		   try {
 			   is.close();
 			   
@@ -136,18 +166,68 @@ public class SOAPMessage {
 		
 	}
 	
-	private Element getSOAPElement(Document xmlDoc, String localName) {
+	/**
+	 * This method registers the W3C DOM document of this message and 
+	 * determines SOAP version, header and body from the envelope
+	 * 
+	 * @param xmlDoc
+	 */
+	private void setXMLDoc(Document xmlDoc) {
+		
+		this.xmlDoc = xmlDoc;
+		if (xmlDoc.getDocumentElement() == null) return;
 
-	    NodeList nodes = xmlDoc.getElementsByTagNameNS(SOAP_NS, localName);
-	    if (nodes.getLength() == 0) return null;
+		this.soapConstants = SecUtil.getSOAPConstants(xmlDoc.getDocumentElement());
 
-        return (Element) nodes.item(0);
+		SecEnvelopeIndex index = SecEnvelopeIndex.getIndex(xmlDoc);
 
-    }
+		this.header = index.getHeader();		    
+		this.body   = index.getBody();
+		
+	}
 	
 	public Document getXMLDoc() {
 		return this.xmlDoc;
 	}
+
+	/**
+	 * @return the SOAP version of this message, or null, if the
+	 * message could not be parsed
+	 */
+	public SOAPConstants getSOAPConstants() {
+		return this.soapConstants;
+	}
+
+	public Element getSOAPHeader() {
+		return this.header;
+	}
+	
+	public Element getSOAPBody() {
+		return this.body;
+	}
+
+	public SecSignaturePolicy getSignaturePolicy() {
+		return this.signaturePolicy;
+	}
+
+	public void setSignaturePolicy(SecSignaturePolicy signaturePolicy) {
+		if (signaturePolicy != null) this.signaturePolicy = signaturePolicy;
+	}
+
+	public String getEncryptionAlgorithm() {
+		return this.encryptionAlgorithm;
+	}
+
+	/**
+	 * @param encryptionAlgorithm e.g. SecConstants.AES_128 (default) or SecConstants.AES_256_GCM
+	 * @throws Exception
+	 */
+	public void setEncryptionAlgorithm(String encryptionAlgorithm) throws Exception {
+		
+		if (SecUtil.isSupportedEncAlgorithm(encryptionAlgorithm) == false) throw new Exception("[SOAPMessage] Unsupported algorithm: " + encryptionAlgorithm);
+		this.encryptionAlgorithm = encryptionAlgorithm;
+		
+	}
 	
 	// this method adds content to the SOAP body element
 	
@@ -174,7 +254,31 @@ public class SOAPMessage {
 	public void sign(SecCrypto sigCrypto) throws Exception {
 		
 		SecSignature signature = new SecSignature(sigCrypto);
-		this.xmlDoc = signature.sign(this.xmlDoc);
+		signature.setPolicy(this.signaturePolicy);
+		setXMLDoc(signature.sign(this.xmlDoc));
+		
+	}
+
+	// this method supports the signing of the SOAP message
+	// with a signing context shared by several messages
+	
+	public void sign(SecSigningContext context) throws Exception {
+		
+		SecSignature signature = new SecSignature(context);
+		setXMLDoc(signature.sign(this.xmlDoc));
+		
+	}
+
+	// this method supports the signing of the SOAP message
+	// with the session key of a symmetric binding (HMAC)
+	
+	public void sign(SecSessionContext session) throws Exception {
+		
+		SecSignature signature = new SecSignature(session);
+		setXMLDoc(signature.sign(this.xmlDoc));
+		
+		this.session    = session;
+		this.sessionKey = signature.getSessionKey();
 		
 	}
 
@@ -186,19 +290,90 @@ public class SOAPMessage {
 
 		// encrypt
 		SecEncryptor encryptor = new SecEncryptor(encCrypto);
-		this.xmlDoc = encryptor.encrypt(this.xmlDoc);
+		encryptor.setSymmetricEncAlgorithm(this.encryptionAlgorithm);
+		
+		setXMLDoc(encryptor.encrypt(this.xmlDoc));
 		
 		// sign
 		SecSignature signature = new SecSignature(sigCrypto);
-		this.xmlDoc = signature.sign(this.xmlDoc);
+		signature.setPolicy(this.signaturePolicy);
+		setXMLDoc(signature.sign(this.xmlDoc));
 
 	}
 	
+	// this method supports encryption and signing
+	// with a signing context shared by several messages
+	
+	public void encryptAndSign(SecSigningContext context, SecCrypto encCrypto) throws Exception {
+
+		// encrypt
+		SecEncryptor encryptor = new SecEncryptor(encCrypto);
+		encryptor.setSymmetricEncAlgorithm(this.encryptionAlgorithm);
+		
+		setXMLDoc(encryptor.encrypt(this.xmlDoc));
+		
+		// sign
+		SecSignature signature = new SecSignature(context);
+		setXMLDoc(signature.sign(this.xmlDoc));
+
+	}
+	
+	// this method supports encryption and signing
+	// with the session key of a symmetric binding
+	
+	public void encryptAndSign(SecSessionContext session, SecCrypto encCrypto) throws Exception {
+
+		// encrypt
+		SecEncryptor encryptor = new SecEncryptor(encCrypto);
+		encryptor.setSymmetricEncAlgorithm(this.encryptionAlgorithm);
+		
+		setXMLDoc(encryptor.encrypt(this.xmlDoc));
+		
+		// sign
+		SecSignature signature = new SecSignature(session);
+		setXMLDoc(signature.sign(this.xmlDoc));
+
+		this.session    = session;
+		this.sessionKey = signature.getSessionKey();
+
+	}
+	
+	/**
+	 * This method is invoked by the SOAPSender with the outcome of the
+	 * request, that carried this message; for a HMAC signature, the
+	 * session key is confirmed or rejected.
+	 * 
+	 * @param delivered true, if the recipient responded with HTTP 200
+	 */
+	void setDelivered(boolean delivered) {
+		
+		if (this.session == null) return;
+		
+		if (delivered) {
+			this.session.confirm(this.sessionKey);
+			
+		} else {
+			this.session.reject(this.sessionKey);
+			
+		}
+		
+	}
+	
 	// this method verifies the signature assigned with th SOAP message
 	
 	public void verify() throws Exception {
 		
-		SecValidator validator = new SecValidator();
+		SecValidator validator = new SecValidator(this.signaturePolicy);
+		validator.verify(this.xmlDoc);
+		
+	}
+	
+	// this method verifies a HMAC signature, that refers
+	// to a session key of the symmetric binding
+	
+	public void verify(SecSessionContext session) throws Exception {
+		
+		SecValidator validator = new SecValidator(session);
 		validator.verify(this.xmlDoc);
 		
 	}
@@ -210,14 +385,14 @@ public class SOAPMessage {
 	public void verifyAndDecrypt(SecCrypto crypto) throws Exception {
 		
 		// verify signature of SOAP message
-		SecValidator validator = new SecValidator();
-		this.xmlDoc = validator.verify(this.xmlDoc);
+		SecValidator validator = new SecValidator(this.signaturePolicy);
+		setXMLDoc(validator.verify(this.xmlDoc));
 		
 		// decrypt content of SOAP message (this is
 		// actually restricted to the BODY element)
 		
 		SecDecryptor decryptor = new SecDecryptor(crypto);
-		this.xmlDoc = decryptor.decrypt(this.xmlDoc);
+		setXMLDoc(decryptor.decrypt(this.xmlDoc));
 		
 	}
 	
@@ -2,6 +2,10 @@ package de.kp.wsclient.soap;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.apache.http.client.methods.HttpPost;
 
 import android.content.Context;
 
@@ -45,19 +49,56 @@ public class SOAPMessenger {
 		if (initialized == false)
 			throw new Exception("[SOAPMessenger] Is not initialized");
 
-		SOAPMessage responseMessage = null;
-			
 		// send SOAP message to web service identified by its url
 		SOAPResponse soapResponse = this.soapSender.doSoapRequest(message, endpoint);
+		return getResponseMessage(soapResponse);
+
+	}
+
+	/**
+	 * This method sends a SOAP message without blocking the calling thread;
+	 * the response message is built on the worker thread of the request.
+	 * 
+	 * @param message
+	 * @param endpoint
+	 * @param callback may be null
+	 * @return
+	 * @throws Exception
+	 */
+	public Future<SOAPMessage> sendRequestAsync(final SOAPMessage message, String endpoint, SOAPCallback<SOAPMessage> callback) throws Exception {
+
+		if (initialized == false)
+			throw new Exception("[SOAPMessenger] Is not initialized");
+
+		final HttpPost httpPost = this.soapSender.buildPostRequest(endpoint, message, "");
+		Callable<SOAPMessage> request = new Callable<SOAPMessage>() {
+			public SOAPMessage call() throws Exception {
+				return getResponseMessage(soapSender.doHttpPost(message, httpPost));
+			}
+		};
 		
+		return this.soapSender.submit(new SOAPRequestTask<SOAPMessage>(request, httpPost, callback));
+
+	}
+
+	private SOAPMessage getResponseMessage(SOAPResponse soapResponse) throws Exception {
+
+		SOAPMessage responseMessage = null;
+
 		int httpStatus = soapResponse.getHttpStatus();
 		if (httpStatus == 200) {
 		
 			InputStream data = soapResponse.getData();
 			if (data == null) throw new Exception("No response data retrieved.");
 			
+			// the stream is closed by the SOAPMessage after parsing,
+			// which also releases the HTTP connection
 			responseMessage = new SOAPMessage(data);
 			
+		} else {
+			// the body is not consumed; the connection is released
+			soapResponse.close();
+			
 		}
 		
 		return responseMessage;
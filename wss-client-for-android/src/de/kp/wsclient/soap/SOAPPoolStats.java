@@ -0,0 +1,55 @@
+package de.kp.wsclient.soap;
+
+/**
+ * This class is a snapshot of the HTTP connection pool of a
+ * {@link SOAPSenderImpl}, and is meant for monitoring purposes
+ * 
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class SOAPPoolStats {
+
+	/** Number of connections currently used by requests */
+	private int leased;
+	
+	/** Number of idle connections, that may be re-used */
+	private int available;
+
+	/** Number of requests waiting for a connection */
+	private int pending;
+
+	/** Maximum number of connections of the pool */
+	private int max;
+	
+	public SOAPPoolStats(int leased, int available, int pending, int max) {
+		
+		this.leased    = leased;
+		this.available = available;
+		
+		this.pending = pending;
+		this.max     = max;
+		
+	}
+
+	public int getLeased() {
+		return leased;
+	}
+
+	public int getAvailable() {
+		return available;
+	}
+
+	public int getPending() {
+		return pending;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "[leased: " + leased + "; pending: " + pending + "; available: " + available + "; max: " + max + "]";
+	}
+	
+}
@@ -0,0 +1,109 @@
+package de.kp.wsclient.soap;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.client.methods.HttpPost;
+
+/**
+ * This class represents an asynchronous SOAP request; cancelling
+ * the task also aborts the underlying HTTP POST request, so that
+ * a worker thread blocked on the connection is released.
+ * 
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+class SOAPRequestTask<V> extends FutureTask<V> {
+
+	private HttpPost httpPost;
+	private SOAPCallback<V> callback;
+	
+	private AtomicReference<Semaphore> permits = new AtomicReference<Semaphore>();
+	
+	public SOAPRequestTask(Callable<V> request, HttpPost httpPost, SOAPCallback<V> callback) {
+		
+		super(request);
+		
+		this.httpPost = httpPost;
+		this.callback = callback;
+		
+	}
+
+	/**
+	 * @param permits the permits of the requests in flight; a permit
+	 * is released, when this task is completed or cancelled
+	 */
+	void setPermits(Semaphore permits) {
+		this.permits.set(permits);
+	}
+
+	/*
+	 * The permit is released before the result is set, so that a caller
+	 * waiting for the result may submit the next request immediately
+	 */
+	@Override
+	protected void set(V result) {
+		
+		release();
+		super.set(result);
+		
+	}
+
+	@Override
+	protected void setException(Throwable t) {
+		
+		release();
+		super.setException(t);
+		
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled) this.httpPost.abort();
+		
+		return cancelled;
+		
+	}
+
+	@Override
+	protected void done() {
+
+		// a cancelled task is completed without a result
+		release();
+		
+		if (this.callback == null) return;
+		
+		if (isCancelled()) {
+			this.callback.onFailure(new CancellationException("[SOAPRequestTask] Request cancelled."));
+			return;
+		}
+		
+		try {
+			this.callback.onSuccess(get());
+
+		} catch (ExecutionException e) {
+
+			Throwable cause = e.getCause();
+			this.callback.onFailure((cause instanceof Exception) ? (Exception)cause : e);
+
+		} catch (InterruptedException e) {
+			this.callback.onFailure(e);
+
+		}
+		
+	}
+	
+	private void release() {
+		
+		Semaphore semaphore = this.permits.getAndSet(null);
+		if (semaphore != null) semaphore.release();
+		
+	}
+	
+}
@@ -1,10 +1,17 @@
 package de.kp.wsclient.soap;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * Encapsulates the details of a response from an SOAP request
  *
+ * By default, a response is buffered, i.e. it holds the body in memory
+ * and may be read more than once. If streaming is enabled, the data of
+ * a response refer to the live stream of the HTTP connection; the
+ * connection is released, when this stream is read to its end or closed.
+ *
  * @author Alex Gilleran
  * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
  *
@@ -20,6 +27,9 @@ public class SOAPResponse {
     /** The data response as a stream */
     private InputStream data;
 
+    /** The buffered body of the response; null for a streamed response */
+    private byte[] content;
+
     /** The HTTP status code as returned by the request */
     private int httpStatus;
 
@@ -37,12 +47,55 @@ public class SOAPResponse {
     }
 
     /**
-     * Gets the data in the response as a stream
+     * Creates a new buffered response
+     *
+     * @param content
+     *            The body of the response.
+     * @param httpStatus
+     *            The HTTP request code.
+     */
+    public SOAPResponse(byte[] content, int httpStatus) {
+        this.content = content;
+        this.httpStatus = httpStatus;
+    }
+
+    /**
+     * Gets the data in the response as a stream; for a buffered
+     * response, each invocation returns a new stream
      *
      * @return the data in the response as a stream
      */
     public InputStream getData() {
-        return data;
+        return (content == null) ? data : new ByteArrayInputStream(content);
+    }
+
+    /**
+     * Indicates whether the data of the response may be read more than once
+     *
+     * @return
+     */
+    public boolean isRepeatable() {
+        return content != null;
+    }
+
+    /**
+     * Releases the underlying HTTP connection of a streamed response;
+     * this method MUST be invoked, if the data are not read to the end.
+     */
+    public void close() {
+
+        if (data == null) return;
+
+        try {
+            data.close();
+
+        } catch (IOException e) {
+            // the connection is discarded anyway
+
+        }
+
+        data = null;
+
     }
 
     /**
@@ -1,5 +1,7 @@
 package de.kp.wsclient.soap;
 
+import java.util.concurrent.Future;
+
 /**
  * This interface is an adapted version of the SOAPRequestor interface
  * from the icesoap project from Alex Gillerian
@@ -40,6 +42,24 @@ public interface SOAPSender {
      */
     public SOAPResponse doSoapRequest(SOAPMessage message, String targetUrl, String soapAction) throws Exception;
 
+    /**
+     * Performs a SOAP request without blocking the calling thread
+     * 
+     * @param envelope
+     *            The SOAP message to send
+     * @param targetUrl
+     *            The url of the SOAP web service to communicate with.
+     * @param soapAction
+     *            The SOAP Action to perform - this is put in the
+     *            <code>SOAPAction</code> field of the outgoing HTTP post.
+     * @param callback
+     *            Notified when the request has completed; may be null
+     * @return A Future representing the response; cancelling it aborts
+     *            the underlying HTTP request
+     * @throws Exception 
+     */
+    public Future<SOAPResponse> doSoapRequestAsync(SOAPMessage message, String targetUrl, String soapAction, SOAPCallback<SOAPResponse> callback) throws Exception;
+
     /**
      * Set the timeout for making connections to the server.
      * 
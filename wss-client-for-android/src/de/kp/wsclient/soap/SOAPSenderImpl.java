@@ -1,21 +1,31 @@
 package de.kp.wsclient.soap;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.security.KeyStore;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.scheme.SocketFactory;
 import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.entity.BufferedHttpEntity;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -24,6 +34,7 @@ import android.content.Context;
 import de.kp.wsclient.security.SecConstants;
 import de.kp.wsclient.security.SecCryptoParam;
 import de.kp.wsclient.security.SecCryptoParams;
+import de.kp.wsclient.util.PooledByteArrayOutputStream;
 
 /**
  * Implementation of {@link SOAPSender}, using the Apache HTTP Client
@@ -59,12 +70,18 @@ public class SOAPSenderImpl implements SOAPSender {
 	/** Name of HTTP */
 	private static final String HTTP_NAME = "http";
 
-	/** HTTP content type submitted in HTTP POST request for SOAP calls */
-	private static final String XML_CONTENT_TYPE = "text/xml; charset=UTF-8";
+	/** Charset parameter of the HTTP content type of SOAP calls */
+	private static final String CONTENT_TYPE_CHARSET = "; charset=UTF-8";
 
 	/** Label for content-type header */
 	private static final String CONTENT_TYPE_LABEL = "Content-type";
 
+	/** Label for accept-encoding header */
+	private static final String ACCEPT_ENCODING_LABEL = "Accept-Encoding";
+
+	/** Content codings supported for HTTP responses */
+	private static final String ACCEPT_ENCODING = "gzip, deflate";
+
 	/** Key for SOAP action header */
 	private static final String HEADER_KEY_SOAP_ACTION = "SOAPAction";
 
@@ -74,8 +91,52 @@ public class SOAPSenderImpl implements SOAPSender {
 	/** Timeout for recieving data */
 	private static final int DEFAULT_SOCKET_TIMEOUT = 20000;
 
+	/** Number of worker threads for asynchronous requests */
+	private static final int DEFAULT_ASYNC_THREADS = 4;
+
+	/** Maximum number of asynchronous requests, either running or queued */
+	private static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+	/** Time in seconds an idle worker thread is kept alive */
+	private static final int ASYNC_KEEP_ALIVE = 60;
+
+	/** Size of the chunks read from a response, that is buffered */
+	private static final int RESPONSE_CHUNK_SIZE = 4096;
+
+	/** Maximum number of pooled HTTP connections */
+	private static final int DEFAULT_MAX_TOTAL = 20;
+
+	/** Maximum number of pooled HTTP connections per route; this matches
+	 *  the number of worker threads for asynchronous requests */
+	private static final int DEFAULT_MAX_PER_ROUTE = DEFAULT_ASYNC_THREADS;
+
+	/** Maximum time in milliseconds a persistent connection is kept alive */
+	private static final long DEFAULT_KEEP_ALIVE = 30000;
+
+	/** Time in milliseconds between two runs of the connection reaper */
+	private static final long DEFAULT_REAPER_INTERVAL = 5000;
+
+	/** Idle time in milliseconds, after which a pooled connection is closed */
+	private static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
 	/** Apache HTTP Client for making HTTP requests */
-	private HttpClient httpClient = null;
+	private DefaultHttpClient httpClient = null;
+	
+	private SOAPConnectionManager connManager = null;
+	private IdleConnectionReaper reaper = null;
+
+	/* Configuration of the HTTP connection pool */
+	private int connTimeout    = DEFAULT_CONN_TIMEOUT;
+	private int socketTimeout  = DEFAULT_SOCKET_TIMEOUT;
+
+	private int maxTotalConnections    = DEFAULT_MAX_TOTAL;
+	private int maxConnectionsPerRoute = DEFAULT_MAX_PER_ROUTE;
+
+	private long keepAlive      = DEFAULT_KEEP_ALIVE;
+	private long reaperInterval = DEFAULT_REAPER_INTERVAL;
+	private long idleTimeout    = DEFAULT_IDLE_TIMEOUT;
+
+	private boolean staleCheckingEnabled = true;
 
 	/** reference to keystore and truststore */
 	private KeyStore keyStore;
@@ -86,14 +147,78 @@ public class SOAPSenderImpl implements SOAPSender {
 	private SecCryptoParam trustStoreParam;
 	private SecCryptoParam keyStoreParam;
 
+	/*
+	 * Indicates whether the content length of a SOAP request has
+	 * to be determined before sending; by default, the request is
+	 * streamed with chunked transfer encoding
+	 */
+	private boolean computeContentLength = false;
+
+	/*
+	 * Minimum size in bytes of a SOAP request, that is sent gzip
+	 * compressed; by default (0), requests are not compressed
+	 */
+	private int compressionThreshold = 0;
+
+	/*
+	 * Indicates whether compressed responses are accepted
+	 */
+	private boolean acceptCompression = true;
+
+	/*
+	 * Maximum number of bytes of a response body, that is buffered
+	 * in memory; by default (0), the size is not limited
+	 */
+	private int maxResponseBuffer = 0;
+
+	/*
+	 * Indicates whether the live stream of the connection is handed
+	 * to the caller of a synchronous request instead of a buffered
+	 * response; streaming is disabled by default
+	 */
+	private boolean responseStreaming = false;
+
+	/*
+	 * Executor for asynchronous requests; this executor is created
+	 * with the first asynchronous request
+	 */
+	private ThreadPoolExecutor executor = null;
+
+	/*
+	 * Permits for asynchronous requests, either running or queued;
+	 * a permit is released, when the request is completed
+	 */
+	private Semaphore inFlight = null;
+
+	private int asyncThreads = DEFAULT_ASYNC_THREADS;
+	private int maxInFlight  = DEFAULT_MAX_IN_FLIGHT;
+
 	public SOAPSenderImpl() {
-		this(null);
+		this((Context)null);
 	}	
 	
 	public SOAPSenderImpl(Context context) {
 		this.context = context;
 	}
 	
+	private SOAPSenderImpl(Builder builder) {
+		
+		this.context = builder.context;
+		
+		this.connTimeout   = builder.connTimeout;
+		this.socketTimeout = builder.socketTimeout;
+
+		this.maxTotalConnections    = builder.maxTotalConnections;
+		this.maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+		
+		this.keepAlive      = builder.keepAlive;
+		this.reaperInterval = builder.reaperInterval;
+		this.idleTimeout    = builder.idleTimeout;
+
+		this.staleCheckingEnabled = builder.staleCheckingEnabled;
+		
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @throws Exception 
@@ -108,31 +233,336 @@ public class SOAPSenderImpl implements SOAPSender {
 	 * @throws Exception 
 	 */
 	public SOAPResponse doSoapRequest(SOAPMessage message, String url, String soapAction) throws Exception {
-		return doHttpPost(buildPostRequest(url, message.toXML(), soapAction));
+		return doHttpPost(message, buildPostRequest(url, message, soapAction));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The request is rejected with a RejectedExecutionException, if
+	 * the maximum number of requests in flight is reached.
+	 * 
+	 * The response is always buffered, as a live stream would hold its
+	 * connection until the caller retrieves the result of the request.
+	 * 
+	 * @throws Exception 
+	 */
+	public Future<SOAPResponse> doSoapRequestAsync(final SOAPMessage message, String url, String soapAction, SOAPCallback<SOAPResponse> callback) throws Exception {
+
+		final HttpPost httpPost = buildPostRequest(url, message, soapAction);
+		Callable<SOAPResponse> request = new Callable<SOAPResponse>() {
+			public SOAPResponse call() throws Exception {
+				return doHttpPost(message, httpPost, true);
+			}
+		};
+		
+		return submit(new SOAPRequestTask<SOAPResponse>(request, httpPost, callback));
+
+	}
+
+	/**
+	 * This method limits the resources used for asynchronous requests;
+	 * it MUST be invoked before the first asynchronous request is sent.
+	 * 
+	 * @param asyncThreads
+	 *            Number of worker threads
+	 * @param maxInFlight
+	 *            Maximum number of requests, either running or queued
+	 */
+	public synchronized void setAsyncLimits(int asyncThreads, int maxInFlight) {
+		
+		if (executor != null) throw new IllegalStateException("[SOAPSenderImpl] Asynchronous requests already started.");
+		if (asyncThreads < 1 || maxInFlight < asyncThreads) throw new IllegalArgumentException("[SOAPSenderImpl] Invalid limits.");
+		
+		this.asyncThreads = asyncThreads;
+		this.maxInFlight  = maxInFlight;
+		
+	}
+
+	/**
+	 * This method stops the worker threads of asynchronous requests
+	 * and the connection reaper; requests, that are already submitted,
+	 * are still processed.
+	 */
+	public synchronized void shutdown() {
+		
+		if (reaper != null) {
+			reaper.shutdown();
+			reaper = null;
+		}
+		
+		if (executor == null) return;
+		
+		executor.shutdown();
+		executor = null;
+
+		inFlight = null;
+
+	}
+
+	/**
+	 * This method returns a snapshot of the HTTP connection pool;
+	 * before the first request is sent, the pool is empty.
+	 * 
+	 * @return
+	 */
+	public synchronized SOAPPoolStats getPoolStats() {
+		
+		if (connManager == null) return new SOAPPoolStats(0, 0, 0, maxTotalConnections);
+		return connManager.getPoolStats();
+		
+	}
+	
+	/**
+	 * Submits an asynchronous request to the executor
+	 * 
+	 * @param task
+	 * @return
+	 */
+	<V> Future<V> submit(SOAPRequestTask<V> task) {
+		
+		Semaphore permits;
+		ThreadPoolExecutor workers;
+		
+		synchronized (this) {
+			workers  = getExecutor();
+			permits  = inFlight;
+		}
+		
+		if (permits.tryAcquire() == false) throw new RejectedExecutionException("[SOAPSenderImpl] Maximum number of requests in flight reached.");
+		task.setPermits(permits);
+		
+		try {
+			workers.execute(task);
+		
+		} catch (RejectedExecutionException e) {
+			
+			permits.release();
+			throw e;
+			
+		}
+
+		return task;
+	
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+
+		if (executor == null) {
+
+			/*
+			 * The number of requests in flight is limited by the permits,
+			 * that are acquired before a request is submitted; the queue
+			 * holds the requests, that exceed the number of worker threads
+			 */
+			inFlight = new Semaphore(maxInFlight);
+			executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, ASYNC_KEEP_ALIVE, TimeUnit.SECONDS, 
+					new LinkedBlockingQueue<Runnable>(), new SOAPThreadFactory());
+			
+			executor.allowCoreThreadTimeOut(true);
+
+		}
+		
+		return executor;
+
+	}
+
+	/**
+	 * This method determines whether the content length of a SOAP request
+	 * is computed before the request is sent; this requires to serialize
+	 * the SOAP message in advance and should only be used for servers that
+	 * do not support chunked transfer encoding.
+	 * 
+	 * @param computeContentLength
+	 */
+	public void setComputeContentLength(boolean computeContentLength) {
+		this.computeContentLength = computeContentLength;
+	}
+
+	/**
+	 * This method enables gzip compression of SOAP requests, that exceed
+	 * the threshold provided; this requires the server to support the
+	 * content coding of requests.
+	 * 
+	 * In order to determine the size, each request is serialized into a
+	 * buffer of at most the threshold: a smaller request is sent from this
+	 * buffer, a larger one is serialized again and compressed while it is
+	 * sent in chunked mode. If the content length has to be computed, the
+	 * compressed request is buffered instead.
+	 * 
+	 * @param compressionThreshold
+	 *            Minimum size in bytes of a compressed request, or 0
+	 */
+	public void setRequestCompression(int compressionThreshold) {
+
+		if (compressionThreshold < 0) throw new IllegalArgumentException("[SOAPSenderImpl] Invalid threshold.");
+		this.compressionThreshold = compressionThreshold;
+
+	}
+
+	/**
+	 * This method determines whether gzip or deflate compressed responses
+	 * are accepted; a compressed response is decompressed while it is read.
+	 * 
+	 * @param acceptCompression
+	 */
+	public void setAcceptCompression(boolean acceptCompression) {
+		this.acceptCompression = acceptCompression;
+	}
+
+	/**
+	 * This method limits the size of a SOAP response, that is buffered
+	 * in memory; a response, that exceeds the maximum size, is rejected.
+	 * By default (0), the size of a buffered response is not limited.
+	 * 
+	 * The limit does not apply to a streamed response.
+	 * 
+	 * @param maxResponseBuffer
+	 *            Maximum size of a buffered response in bytes, or 0
+	 */
+	public void setResponseBuffer(int maxResponseBuffer) {
+
+		if (maxResponseBuffer < 0) throw new IllegalArgumentException("[SOAPSenderImpl] Invalid buffer size.");
+		this.maxResponseBuffer = maxResponseBuffer;
+
+	}
+
+	/**
+	 * This method determines whether the live stream of the HTTP connection
+	 * is handed to the caller of a synchronous request, so that the response
+	 * is parsed while it is received; in this case, the caller MUST read the
+	 * stream to its end or close the response, as the pooled connection is
+	 * held until then. By default, the response is buffered in memory.
+	 * 
+	 * The responses of doSoapRequestAsync are always buffered.
+	 * 
+	 * @param responseStreaming
+	 */
+	public void setResponseStreaming(boolean responseStreaming) {
+		this.responseStreaming = responseStreaming;
 	}
 
 	/**
 	 * Performs an HTTP POST request
 	 * 
+	 * @param message
+	 *            The {@link SOAPMessage} carried by the request.
 	 * @param httpPost
 	 *            The {@link HttpPost} to perform.
-	 * @return An {@link InputStream} of the response.
+	 * @return The {@link SOAPResponse}, either streamed or buffered.
 	 * @throws Exception 
 	 * @throws SOAPException
 	 */
 
-	private SOAPResponse doHttpPost(HttpPost httpPost) throws Exception {
+	SOAPResponse doHttpPost(SOAPMessage message, HttpPost httpPost) throws Exception {
+		return doHttpPost(message, httpPost, responseStreaming == false);
+	}
 
-		// lazy initialization
-		if (httpClient == null)
-			httpClient = buildHttpClient();
+	/**
+	 * Performs an HTTP POST request for the message provided, and reports
+	 * the outcome to the message; this confirms or rejects the session key
+	 * of a HMAC signature.
+	 * 
+	 * @param message
+	 * @param httpPost
+	 * @param buffered
+	 * @return
+	 * @throws Exception
+	 */
+	private SOAPResponse doHttpPost(SOAPMessage message, HttpPost httpPost, boolean buffered) throws Exception {
+		
+		SOAPResponse response = null;
+		try {
+			
+			response = doHttpPost(httpPost, buffered);
+			return response;
+			
+		} finally {
+			message.setDelivered((response != null) && (response.getHttpStatus() == HttpStatus.SC_OK));
+			
+		}
+		
+	}
+
+	/**
+	 * Performs an HTTP POST request, and optionally buffers the response;
+	 * without a configured maximum, the size of the buffer is not limited.
+	 * 
+	 * @param httpPost
+	 * @param buffered
+	 * @return
+	 * @throws Exception
+	 */
+	private SOAPResponse doHttpPost(HttpPost httpPost, boolean buffered) throws Exception {
 
 		// Execute HTTP Post Request
-		HttpResponse response = httpClient.execute(httpPost);
-		HttpEntity res = new BufferedHttpEntity(response.getEntity());
+		HttpResponse response = getHttpClient().execute(httpPost);
+		int httpStatus = response.getStatusLine().getStatusCode();
+
+		HttpEntity res = DecompressingEntity.wrap(response.getEntity());
+		if (res == null) return new SOAPResponse((InputStream)null, httpStatus);
+
+		try {
+			
+			if (buffered == true) 
+				return new SOAPResponse(readContent(res), httpStatus);
+			
+			/*
+			 * The live stream is handed to the caller; the connection
+			 * is released, when this stream is consumed or closed
+			 */
+			return new SOAPResponse(res.getContent(), httpStatus);
+			
+		} catch (Exception e) {
+			
+			// the connection is not reused after a failure
+			httpPost.abort();
+			throw e;
+			
+		}
+
+	}
+
+	/**
+	 * This method reads the body of a response into memory; a body, that
+	 * exceeds the maximum buffer size, is rejected.
+	 * 
+	 * @param entity
+	 * @return
+	 * @throws IOException
+	 */
+	private byte[] readContent(HttpEntity entity) throws IOException {
+		
+		int maxSize = (maxResponseBuffer > 0) ? maxResponseBuffer : Integer.MAX_VALUE;
+
+		long length = entity.getContentLength();
+		if (length > maxSize) throw new IOException("[SOAPSenderImpl] Response exceeds " + maxSize + " bytes.");
+		
+		InputStream content = entity.getContent();
+		PooledByteArrayOutputStream output = new PooledByteArrayOutputStream();
+		
+		try {
+		
+			byte[] chunk = new byte[RESPONSE_CHUNK_SIZE];
+			int count;
+			
+			while ((count = content.read(chunk)) != -1) {
 
-		return new SOAPResponse(res.getContent(), response.getStatusLine().getStatusCode());
+				if (output.size() + count > maxSize) 
+					throw new IOException("[SOAPSenderImpl] Response exceeds " + maxSize + " bytes.");
 
+				output.write(chunk, 0, count);
+
+			}
+			
+			return output.toByteArray();
+			
+		} finally {
+			output.release();
+			content.close();
+			
+		}
+		
 	}
 
 	/**
@@ -243,21 +673,54 @@ public class SOAPSenderImpl implements SOAPSender {
 	}
 
 	/**
-	 * Builds an Apache {@link HttpClient} from defaults.
+	 * Lazy initialization of the Apache {@link HttpClient}; the
+	 * client is shared by synchronous and asynchronous requests
+	 * 
+	 * @return
+	 * @throws Exception
+	 */
+	private synchronized HttpClient getHttpClient() throws Exception {
+
+		if (httpClient == null)
+			httpClient = buildHttpClient();
+		
+		// the reaper is (re-)started after a shutdown
+		if (reaper == null && reaperInterval > 0) {
+			
+			reaper = new IdleConnectionReaper(connManager, reaperInterval, idleTimeout);
+			reaper.start();
+			
+		}
+		
+		return httpClient;
+
+	}
+
+	/**
+	 * Builds an Apache {@link HttpClient} from the pool configuration.
 	 * 
 	 * @return An implementation of {@link HttpClient}
 	 * @throws Exception 
 	 */
-	private HttpClient buildHttpClient() throws Exception {
+	private DefaultHttpClient buildHttpClient() throws Exception {
 
 		HttpParams httpParameters = new BasicHttpParams();
-		HttpConnectionParams.setConnectionTimeout(httpParameters, DEFAULT_CONN_TIMEOUT);
+		HttpConnectionParams.setConnectionTimeout(httpParameters, connTimeout);
+
+		HttpConnectionParams.setSoTimeout(httpParameters, socketTimeout);
+		HttpConnectionParams.setStaleCheckingEnabled(httpParameters, staleCheckingEnabled);
+		
+		ConnManagerParams.setMaxTotalConnections(httpParameters, maxTotalConnections);
+		ConnManagerParams.setMaxConnectionsPerRoute(httpParameters, new ConnPerRouteBean(maxConnectionsPerRoute));
 
-		HttpConnectionParams.setSoTimeout(httpParameters, DEFAULT_SOCKET_TIMEOUT);
 		SchemeRegistry schemeRegistry = getSchemeRegistry();
 
-		ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(httpParameters, schemeRegistry);
-		return new DefaultHttpClient(cm, httpParameters);
+		connManager = new SOAPConnectionManager(httpParameters, schemeRegistry);
+		
+		DefaultHttpClient client = new DefaultHttpClient(connManager, httpParameters);
+		client.setKeepAliveStrategy(new SOAPKeepAliveStrategy(keepAlive));
+		
+		return client;
 
 	}
 
@@ -322,23 +785,60 @@ public class SOAPSenderImpl implements SOAPSender {
 	 * 
 	 * @param url
 	 *            the URL to POST to
-	 * @param envelopeString
-	 *            The envelope to post, as a serialized string.
+	 * @param message
+	 *            The SOAP message to post.
+	 * @param soapAction
+	 *            SOAPAction for the header.
+	 * @return An {@link HttpPost} object representing the supplied information.
+	 * @throws IOException
+	 */
+	HttpPost buildPostRequest(String url, SOAPMessage message, String soapAction) throws IOException {
+		
+		SOAPEntity entity = (compressionThreshold > 0) ? new SOAPEntity(message, compressionThreshold, computeContentLength) : new SOAPEntity(message, computeContentLength);
+		
+		SOAPConstants soapConstants = message.getSOAPConstants();
+		if (soapConstants == null) soapConstants = SOAPConstants.SOAP11_CONSTANTS;
+		
+		return buildPostRequest(url, entity, soapConstants, soapAction);
+	
+	}
+
+	/**
+	 * Builds an {@link HttpPost} request.
+	 * 
+	 * @param url
+	 *            the URL to POST to
+	 * @param entity
+	 *            The envelope to post, as a streaming entity.
+	 * @param soapConstants
+	 *            SOAP version of the envelope.
 	 * @param soapAction
 	 *            SOAPAction for the header.
 	 * @return An {@link HttpPost} object representing the supplied information.
-	 * @throws UnsupportedEncodingException
+	 * @throws IOException
 	 */
-	private HttpPost buildPostRequest(String url, String envelopeString, String soapAction)
-			throws UnsupportedEncodingException {
+	private HttpPost buildPostRequest(String url, HttpEntity entity, SOAPConstants soapConstants, String soapAction)
+			throws IOException {
 
 		// Create a new HttpClient and Post Header
 		HttpPost httppost = new HttpPost(url);
 
-		httppost.setHeader(CONTENT_TYPE_LABEL, XML_CONTENT_TYPE);
-		httppost.setHeader(HEADER_KEY_SOAP_ACTION, soapAction);
+		String contentType = soapConstants.getContentType() + CONTENT_TYPE_CHARSET;
+		if (soapConstants instanceof SOAP12Constants) {
+
+			// SOAP 1.2 carries the action as a parameter of the
+			// content type, and has no SOAPAction header
+			if (soapAction != null && soapAction.length() > 0) contentType += "; action=\"" + soapAction + "\"";
+			httppost.setHeader(CONTENT_TYPE_LABEL, contentType);
+
+		} else {
+
+			httppost.setHeader(CONTENT_TYPE_LABEL, contentType);
+			httppost.setHeader(HEADER_KEY_SOAP_ACTION, soapAction);
+
+		}
 
-		HttpEntity entity = new StringEntity(envelopeString);
+		if (acceptCompression == true) httppost.setHeader(ACCEPT_ENCODING_LABEL, ACCEPT_ENCODING);
 
 		httppost.setEntity(entity);
 		return httppost;
@@ -349,15 +849,154 @@ public class SOAPSenderImpl implements SOAPSender {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void setConnectionTimeout(int timeout) {
-		HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), timeout);
+	public synchronized void setConnectionTimeout(int timeout) {
+
+		this.connTimeout = timeout;
+		if (httpClient != null) HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), timeout);
+
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void setSocketTimeout(int timeout) {
-		HttpConnectionParams.setSoTimeout(httpClient.getParams(), timeout);
+	public synchronized void setSocketTimeout(int timeout) {
+
+		this.socketTimeout = timeout;
+		if (httpClient != null) HttpConnectionParams.setSoTimeout(httpClient.getParams(), timeout);
+
+	}
+
+	/**
+	 * This builder configures the HTTP connection pool of a SOAPSenderImpl
+	 */
+	public static class Builder {
+
+		private Context context;
+		
+		private int connTimeout   = DEFAULT_CONN_TIMEOUT;
+		private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+
+		private int maxTotalConnections    = DEFAULT_MAX_TOTAL;
+		private int maxConnectionsPerRoute = DEFAULT_MAX_PER_ROUTE;
+
+		private long keepAlive      = DEFAULT_KEEP_ALIVE;
+		private long reaperInterval = DEFAULT_REAPER_INTERVAL;
+		private long idleTimeout    = DEFAULT_IDLE_TIMEOUT;
+
+		private boolean staleCheckingEnabled = true;
+
+		public Builder(Context context) {
+			this.context = context;
+		}
+		
+		public Builder setConnectionTimeout(int connTimeout) {
+			this.connTimeout = connTimeout;
+			return this;
+		}
+
+		public Builder setSocketTimeout(int socketTimeout) {
+			this.socketTimeout = socketTimeout;
+			return this;
+		}
+
+		/**
+		 * @param maxTotalConnections
+		 *            Maximum number of pooled connections
+		 * @param maxConnectionsPerRoute
+		 *            Maximum number of pooled connections to a single endpoint
+		 * @return
+		 */
+		public Builder setMaxConnections(int maxTotalConnections, int maxConnectionsPerRoute) {
+			
+			if (maxConnectionsPerRoute < 1 || maxTotalConnections < maxConnectionsPerRoute) 
+				throw new IllegalArgumentException("[SOAPSenderImpl] Invalid connection limits.");
+			
+			this.maxTotalConnections    = maxTotalConnections;
+			this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+			
+			return this;
+		
+		}
+
+		/**
+		 * @param keepAlive
+		 *            Maximum time in milliseconds a persistent connection is 
+		 *            kept alive, if the server does not announce a shorter one
+		 * @return
+		 */
+		public Builder setKeepAlive(long keepAlive) {
+			
+			if (keepAlive < 0) throw new IllegalArgumentException("[SOAPSenderImpl] Invalid keep-alive.");
+			
+			this.keepAlive = keepAlive;
+			return this;
+		
+		}
+
+		/**
+		 * @param reaperInterval
+		 *            Time in milliseconds between two runs of the connection 
+		 *            reaper; 0 disables the reaper
+		 * @param idleTimeout
+		 *            Idle time in milliseconds, after which a pooled connection 
+		 *            is closed
+		 * @return
+		 */
+		public Builder setIdleConnectionReaper(long reaperInterval, long idleTimeout) {
+			
+			if (reaperInterval < 0 || idleTimeout < 0) throw new IllegalArgumentException("[SOAPSenderImpl] Invalid reaper settings.");
+			
+			this.reaperInterval = reaperInterval;
+			this.idleTimeout    = idleTimeout;
+			
+			return this;
+		
+		}
+
+		/**
+		 * The stale check costs up to 30 ms per request, but detects pooled
+		 * connections, that were closed by the server; it may be disabled, 
+		 * if the connection reaper is used with a short idle timeout.
+		 * 
+		 * @param staleCheckingEnabled
+		 * @return
+		 */
+		public Builder setStaleCheckingEnabled(boolean staleCheckingEnabled) {
+			this.staleCheckingEnabled = staleCheckingEnabled;
+			return this;
+		}
+
+		public SOAPSenderImpl build() {
+			return new SOAPSenderImpl(this);
+		}
+		
+	}
+
+	/**
+	 * This factory creates daemon worker threads for asynchronous
+	 * requests, so that pending requests do not keep the process alive
+	 */
+	private static class SOAPThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger poolNumber = new AtomicInteger();
+		
+		private final AtomicInteger threadNumber = new AtomicInteger();
+		private final String namePrefix;
+		
+		public SOAPThreadFactory() {
+			namePrefix = "SOAPSender-" + poolNumber.incrementAndGet() + "-";
+		}
+		
+		public Thread newThread(Runnable runnable) {
+		
+			Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		
+		}
+		
 	}
+
 }
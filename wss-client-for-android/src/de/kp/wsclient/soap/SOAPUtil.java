@@ -27,6 +27,15 @@ public class SOAPUtil {
 		return new SOAPMessage();		
 	}
 
+	/**
+	 * @param soapConstants
+	 *            SOAPConstants.SOAP11_CONSTANTS or SOAPConstants.SOAP12_CONSTANTS
+	 * @return
+	 */
+	public static SOAPMessage createSOAPMessage(SOAPConstants soapConstants) {
+		return new SOAPMessage(soapConstants);		
+	}
+
 	/**
 	 * This method supports signing, and encrypting & signing of
 	 * a certain SOAP message;
@@ -0,0 +1,158 @@
+package de.kp.wsclient.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a bounded, thread-safe cache, that evicts the
+ * least recently used entry, if its capacity is exceeded; hits
+ * and misses are counted for monitoring purposes.
+ *
+ * An optional EvictionListener is notified of every entry, that
+ * leaves the cache, e.g. to wipe key material.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class LRUCache<K,V> {
+
+	public interface EvictionListener<K,V> {
+
+		/**
+		 * This method is invoked (while holding the lock of the cache)
+		 * for an entry, that is evicted, removed or replaced.
+		 *
+		 * @param key
+		 * @param value
+		 */
+		public void onEviction(K key, V value);
+
+	}
+
+	private int capacity;
+	private LinkedHashMap<K,V> entries;
+
+	private AtomicLong hits   = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
+	private EvictionListener<K,V> listener;
+
+	public LRUCache(int capacity) {
+
+		if (capacity < 1) throw new IllegalArgumentException("[LRUCache] Invalid capacity.");
+		this.capacity = capacity;
+
+		this.entries = new LinkedHashMap<K,V>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+
+				if (size() <= LRUCache.this.capacity) return false;
+
+				evicted(eldest.getKey(), eldest.getValue());
+				return true;
+
+			}
+
+		};
+
+	}
+
+	/**
+	 * @param key
+	 * @return the cached value, or null
+	 */
+	public synchronized V get(K key) {
+
+		V value = entries.get(key);
+		if (value == null) {
+			misses.incrementAndGet();
+
+		} else {
+			hits.incrementAndGet();
+
+		}
+
+		return value;
+
+	}
+
+	public synchronized void put(K key, V value) {
+
+		V previous = entries.put(key, value);
+		if (previous != null && previous != value) evicted(key, previous);
+
+	}
+
+	public synchronized V remove(K key) {
+
+		V value = entries.remove(key);
+		if (value != null) evicted(key, value);
+
+		return value;
+
+	}
+
+	public synchronized void clear() {
+
+		if (listener != null) {
+			for (Map.Entry<K,V> entry:entries.entrySet()) listener.onEviction(entry.getKey(), entry.getValue());
+		}
+
+		entries.clear();
+
+	}
+
+	public synchronized void setEvictionListener(EvictionListener<K,V> listener) {
+		this.listener = listener;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Changes the capacity of this cache; if the capacity is reduced,
+	 * the least recently used entries are evicted.
+	 *
+	 * @param capacity
+	 */
+	public synchronized void setCapacity(int capacity) {
+
+		if (capacity < 1) throw new IllegalArgumentException("[LRUCache] Invalid capacity.");
+		this.capacity = capacity;
+
+		while (entries.size() > capacity) {
+
+			K eldest = entries.keySet().iterator().next();
+			evicted(eldest, entries.remove(eldest));
+
+		}
+
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private void evicted(K key, V value) {
+		if (listener != null) listener.onEviction(key, value);
+	}
+
+}
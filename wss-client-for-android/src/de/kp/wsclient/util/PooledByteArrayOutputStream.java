@@ -0,0 +1,136 @@
+package de.kp.wsclient.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * This class is an unsynchronized, growable byte sink, that borrows
+ * its buffer from a per-thread pool; the buffer is handed back to the
+ * pool by invoking release(), so that subsequent serializations on the
+ * same thread do not allocate a new buffer.
+ *
+ * Buffers that have grown beyond MAX_POOLED_SIZE are not retained.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+
+	private static final int INITIAL_SIZE = 8192;
+
+	// the maximum size of a buffer that is kept in the pool
+	private static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+	private static ThreadLocal<byte[]> bufCache = new ThreadLocal<byte[]>();
+
+	private byte[] buf;
+	private int pos = 0;
+
+	public PooledByteArrayOutputStream() {
+
+		byte[] cached = bufCache.get();
+		if (cached == null) {
+			buf = new byte[INITIAL_SIZE];
+
+		} else {
+			// the buffer is removed from the pool while in use;
+			// a nested stream on the same thread gets its own one
+			bufCache.set(null);
+			buf = cached;
+		}
+
+	}
+
+	public void write(int b) {
+
+		int newPos = pos + 1;
+		if (newPos > buf.length) expand(newPos);
+
+		buf[pos] = (byte)b;
+		pos = newPos;
+
+	}
+
+	public void write(byte[] b) {
+		write(b, 0, b.length);
+	}
+
+	public void write(byte[] b, int off, int len) {
+
+		int newPos = pos + len;
+		if (newPos > buf.length) expand(newPos);
+
+		System.arraycopy(b, off, buf, pos, len);
+		pos = newPos;
+
+	}
+
+	/**
+	 * Writes the content of this stream to another output stream
+	 * without creating an intermediate copy.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(buf, 0, pos);
+	}
+
+	public int size() {
+		return pos;
+	}
+
+	public void reset() {
+		pos = 0;
+	}
+
+	public byte[] toByteArray() {
+
+		byte[] result = new byte[pos];
+		System.arraycopy(buf, 0, result, 0, pos);
+
+		return result;
+
+	}
+
+	/**
+	 * Decodes the content of this stream with the charset provided.
+	 *
+	 * @param charsetName
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	public String toString(String charsetName) throws UnsupportedEncodingException {
+		return new String(buf, 0, pos, charsetName);
+	}
+
+	/**
+	 * Hands the buffer back to the per-thread pool; this stream
+	 * MUST not be used after this method has been invoked.
+	 */
+	public void release() {
+
+		if (buf == null) return;
+		if (buf.length <= MAX_POOLED_SIZE) bufCache.set(buf);
+
+		buf = null;
+		pos = 0;
+
+	}
+
+	private void expand(int newPos) {
+
+		int newSize = buf.length;
+		while (newPos > newSize) {
+			newSize = newSize << 1;
+		}
+
+		byte[] newBuf = new byte[newSize];
+		System.arraycopy(buf, 0, newBuf, 0, pos);
+
+		buf = newBuf;
+
+	}
+
+}
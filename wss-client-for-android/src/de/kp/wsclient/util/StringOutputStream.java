@@ -1,22 +1,27 @@
 package de.kp.wsclient.util;
 
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
 
-public class StringOutputStream extends OutputStream {
+/**
+ * This output stream collects the bytes written and decodes
+ * them as UTF-8; for byte oriented serialization, refer to
+ * {@link PooledByteArrayOutputStream}.
+ */
+public class StringOutputStream extends ByteArrayOutputStream {
     
-	private StringBuilder stringBuilder;
-
     public StringOutputStream() {
-    	stringBuilder = new StringBuilder();
-    }
-
-    public void write(int b) throws IOException {
-    	stringBuilder.append( (char) b );
+    	super();
     }
 
     public String toString() {
-        return stringBuilder.toString();
+    	try {
+    		return toString("UTF-8");
+
+    	} catch (UnsupportedEncodingException e) {
+    		// UTF-8 is supported on every platform
+    		throw new IllegalStateException(e);
+    	}
     }
 
 }
@@ -19,77 +19,48 @@
 
 package de.kp.wsclient.util;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Random;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * UUID generator (taken from Axis2)
+ * 
+ * The generator is lock-free: the random base is determined once,
+ * when the class is loaded, without resolving the local host name,
+ * and the incrementing value is an atomic counter.
  */
 public class UUIDGenerator {
 
-    private static String baseUUID = null;
-    private static long incrementingValue = 0;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
-
-    private static Random myRand = null;
+    private static final String baseUUID = createBaseUUID();
+    private static final AtomicLong incrementingValue = new AtomicLong();
 
     /**
-     * MD5 a random string with localhost/date etc will return 128 bits
-     * construct a string of 18 characters from those bits.
+     * A random base of 18 characters, followed by the current time
+     * and an incrementing value.
      *
      * @return string
      */
-    public static synchronized String getUUID() {
-        if (baseUUID == null) {
-            getInitialUUID();
-        }
-        long i = ++incrementingValue;
-        if(i >= Long.MAX_VALUE || i < 0){
-            incrementingValue = 0;
-            i = 0;
-        }
-        return baseUUID + System.currentTimeMillis() + i;
+    public static String getUUID() {
+        // the counter restarts at 0 after Long.MAX_VALUE
+        long i = incrementingValue.incrementAndGet() & Long.MAX_VALUE;
+        return new StringBuilder(48).append(baseUUID).append(System.currentTimeMillis()).append(i).toString();
     }
 
-    protected static synchronized void getInitialUUID() {
-        if (baseUUID != null) {
-            return;
-        }
-        if (myRand == null) {
-            myRand = new Random();
-        }
-        long rand = myRand.nextLong();
-        String sid;
-        try {
-            sid = InetAddress.getLocalHost().toString();
-        } catch (UnknownHostException e) {
-            sid = Thread.currentThread().getName();
-        }
-        StringBuilder sb = new StringBuilder();
-        sb.append(sid);
-        sb.append(":");
-        sb.append(Long.toString(rand));
-        MessageDigest md5 = null;
-        try {
-            md5 = MessageDigest.getInstance("MD5");
+    /**
+     * 72 random bits, hex encoded
+     */
+    private static String createBaseUUID() {
+        byte[] bytes = new byte[9];
+        new SecureRandom().nextBytes(bytes);
 
-        } catch (NoSuchAlgorithmException e) {
-        }
-        
-        md5.update(sb.toString().getBytes());
-        byte[] array = md5.digest();
-        StringBuilder sb2 = new StringBuilder();
-        for (int j = 0; j < array.length; ++j) {
-            int b = array[j] & 0xFF;
-            sb2.append(Integer.toHexString(b));
+        char[] chars = new char[18];
+        for (int j = 0; j < bytes.length; j++) {
+            chars[2 * j]     = HEX_DIGITS[(bytes[j] >> 4) & 0xF];
+            chars[2 * j + 1] = HEX_DIGITS[bytes[j] & 0xF];
         }
-        int begin = myRand.nextInt();
-        if (begin < 0) begin = begin * -1;
-        begin = begin % 8;
-        baseUUID = sb2.toString().substring(begin, begin + 18).toUpperCase();
+        return new String(chars);
     }
 
 }
@@ -0,0 +1,138 @@
+package de.kp.wsclient.xml;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+/**
+ * This class holds pre-configured Transformer instances, that are
+ * used to serialize W3C DOM documents; the TransformerFactory is
+ * looked up only once, and each thread keeps its own Transformer.
+ *
+ * A Transformer is borrowed with acquire() and MUST be handed back
+ * with release(); while borrowed, it is removed from the cache, so
+ * that nested serializations on the same thread do not share it.
+ *
+ * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
+ *
+ */
+public class TransformerCache {
+
+	private static final String ENCODING = "UTF-8";
+
+	private static TransformerFactory factory = null;
+	private static Properties outFormat = createOutputFormat();
+
+	private static ThreadLocal<Transformer> transformers = new ThreadLocal<Transformer>();
+
+	private static AtomicLong hits   = new AtomicLong();
+	private static AtomicLong misses = new AtomicLong();
+
+	private TransformerCache() {
+	}
+
+	/**
+	 * This method returns a Transformer, that is configured to
+	 * serialize a document as UTF-8 without indentation.
+	 *
+	 * @return
+	 * @throws TransformerConfigurationException
+	 */
+	public static Transformer acquire() throws TransformerConfigurationException {
+
+		Transformer transformer = transformers.get();
+		if (transformer != null) {
+
+			transformers.set(null);
+			hits.incrementAndGet();
+
+			return transformer;
+
+		}
+
+		misses.incrementAndGet();
+		return createTransformer();
+
+	}
+
+	/**
+	 * This method resets the Transformer provided and keeps it
+	 * for subsequent use on the current thread.
+	 *
+	 * @param transformer
+	 */
+	public static void release(Transformer transformer) {
+
+		if (transformer == null) return;
+
+		// reset() restores the state after creation, i.e. the
+		// output properties have to be applied again
+		transformer.reset();
+		transformer.setOutputProperties(outFormat);
+
+		transformers.set(transformer);
+
+	}
+
+	/**
+	 * @return the number of acquire() calls served from the cache
+	 */
+	public static long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of acquire() calls that created a Transformer
+	 */
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	public static void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private static Transformer createTransformer() throws TransformerConfigurationException {
+
+		Transformer transformer = null;
+
+		// a TransformerFactory is not guaranteed to be thread-safe;
+		// this path is only taken once per thread
+		synchronized (TransformerCache.class) {
+
+			if (factory == null) factory = TransformerFactory.newInstance();
+			transformer = factory.newTransformer();
+
+		}
+
+		transformer.setOutputProperties(outFormat);
+		return transformer;
+
+	}
+
+	private static Properties createOutputFormat() {
+
+		Properties outFormat = new Properties();
+
+		// IMPORTANT: it is essential, that no indents are to be created, as this
+		// this corrupts the signature element; this situation MUST be avoided
+		// by using no indentation
+
+		outFormat.setProperty( OutputKeys.INDENT, "no" );
+
+		outFormat.setProperty( OutputKeys.METHOD, "xml" );
+		outFormat.setProperty( OutputKeys.OMIT_XML_DECLARATION, "no" );
+
+		outFormat.setProperty( OutputKeys.VERSION, "1.0" );
+		outFormat.setProperty( OutputKeys.ENCODING, ENCODING );
+
+		return outFormat;
+
+	}
+
+}
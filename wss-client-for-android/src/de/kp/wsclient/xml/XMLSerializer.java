@@ -1,19 +1,17 @@
 package de.kp.wsclient.xml;
 
 import java.io.OutputStream;
-import java.util.Properties;
+import java.io.UnsupportedEncodingException;
 
-import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 
-import de.kp.wsclient.util.StringOutputStream;
+import de.kp.wsclient.util.PooledByteArrayOutputStream;
 
 /**
  * This class supports the serialization of a certain
@@ -24,51 +22,91 @@ import de.kp.wsclient.util.StringOutputStream;
  */
 public class XMLSerializer {
 	
+	private static final String ENCODING = "UTF-8";
+
 	/**
+	 * The String representation is decoded from the UTF-8 bytes
+	 * of the serialized document.
+	 * 
 	 * @param xmlDoc
 	 * @return
 	 */
 	public static String serialize(Document xmlDoc)  {
 		
         String xml = null;
+        PooledByteArrayOutputStream output = new PooledByteArrayOutputStream();
+
         try {
-        	
-            TransformerFactory factory = TransformerFactory.newInstance();
-            Transformer transformer = factory.newTransformer();
-	            
-            Properties outFormat = new Properties();
-            
-            // IMPORTANT: it is essential, that no indents are to be created, as this 
-            // this corrupts the signature element; this situation MUST be avoided
-            // by using no indentation
-            
-            outFormat.setProperty( OutputKeys.INDENT, "no" );
-	        
-            outFormat.setProperty( OutputKeys.METHOD, "xml" );
-	        outFormat.setProperty( OutputKeys.OMIT_XML_DECLARATION, "no" );
-	        
-            outFormat.setProperty( OutputKeys.VERSION, "1.0" );
-            outFormat.setProperty( OutputKeys.ENCODING, "UTF-8" );
-            
-            transformer.setOutputProperties( outFormat );
-
-	        DOMSource domSource = new DOMSource(xmlDoc.getDocumentElement());
-            OutputStream output = new StringOutputStream();
-            
-            StreamResult result = new StreamResult( output );
-            transformer.transform( domSource, result );
 
-            xml = output.toString();
+            serialize(xmlDoc, output);
+            xml = output.toString(ENCODING);
 
         } catch (TransformerConfigurationException e) {
             e.printStackTrace();
-        
+
         } catch (TransformerException e) {
             e.printStackTrace();
+
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+
+        } finally {
+            output.release();
         }
 
         return xml;
 
 	}
 
+	/**
+	 * This method returns the UTF-8 encoded representation
+	 * of a W3C DOM document.
+	 * 
+	 * @param xmlDoc
+	 * @return
+	 * @throws TransformerException
+	 */
+	public static byte[] serializeToBytes(Document xmlDoc) throws TransformerException {
+
+        PooledByteArrayOutputStream output = new PooledByteArrayOutputStream();
+        try {
+
+            serialize(xmlDoc, output);
+            return output.toByteArray();
+
+        } finally {
+            output.release();
+        }
+
+	}
+
+	/**
+	 * This method writes the UTF-8 representation of a W3C DOM
+	 * document directly to the output stream provided, without
+	 * building an intermediate String; the output stream is not
+	 * closed by this method.
+	 *
+	 * The Transformer is taken from the {@link TransformerCache}
+	 * and handed back after serialization.
+	 *
+	 * @param xmlDoc
+	 * @param output
+	 * @throws TransformerException
+	 */
+	public static void serialize(Document xmlDoc, OutputStream output) throws TransformerException {
+
+        Transformer transformer = TransformerCache.acquire();
+        try {
+
+            DOMSource domSource = new DOMSource(xmlDoc.getDocumentElement());
+            StreamResult result = new StreamResult( output );
+
+            transformer.transform( domSource, result );
+
+        } finally {
+            TransformerCache.release(transformer);
+        }
+
+	}
+
 }
@@ -54,8 +54,16 @@ public class SignatureAlgorithm extends Algorithm {
     private static Map<String, Class<? extends SignatureAlgorithmSpi>> algorithmHash = 
         new ConcurrentHashMap<String, Class<? extends SignatureAlgorithmSpi>>();
    
-    /** Field signatureAlgorithm */
-    private final SignatureAlgorithmSpi signatureAlgorithm;
+    /** 
+     * Field signatureAlgorithm
+     * 
+     * __ADAPTED__
+     * 
+     * The SPI (and its java.security.Signature or Mac) is created with the 
+     * first cryptographic operation; a SignatureAlgorithm, that only provides 
+     * the ds:SignatureMethod element, does not instantiate an SPI at all
+     */
+    private SignatureAlgorithmSpi signatureAlgorithm = null;
 
     private final String algorithmURI;
 
@@ -70,8 +78,7 @@ public class SignatureAlgorithm extends Algorithm {
         super(doc, algorithmURI);
         this.algorithmURI = algorithmURI;
         
-        signatureAlgorithm = getSignatureAlgorithmSpi(algorithmURI);
-        signatureAlgorithm.engineGetContextFromElement(this.constructionElement);
+        checkRegistered(algorithmURI);
     }
 
     /**
@@ -132,8 +139,34 @@ public class SignatureAlgorithm extends Algorithm {
             throw new XMLSecurityException("signature.signatureAlgorithm", exArgs);
         }
         
-        signatureAlgorithm = getSignatureAlgorithmSpi(algorithmURI);
-        signatureAlgorithm.engineGetContextFromElement(this.constructionElement);
+        checkRegistered(algorithmURI);
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Checks that an implementation is registered for the algorithmURI
+     * argument; the SPI itself is created lazily.
+     */
+    private static void checkRegistered(String algorithmURI) throws XMLSignatureException {
+        if (algorithmURI == null || !algorithmHash.containsKey(algorithmURI)) {
+            Object exArgs[] = { algorithmURI, "not registered" };
+            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
+        }
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Returns the SPI of this SignatureAlgorithm and creates it on first use
+     */
+    private SignatureAlgorithmSpi getSpi() throws XMLSignatureException {
+        if (signatureAlgorithm == null) {
+            SignatureAlgorithmSpi spi = getSignatureAlgorithmSpi(algorithmURI);
+            spi.engineGetContextFromElement(this.constructionElement);
+            signatureAlgorithm = spi;
+        }
+        return signatureAlgorithm;
     }
 
     /**
@@ -170,7 +203,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public byte[] sign() throws XMLSignatureException {
-        return signatureAlgorithm.engineSign();
+        return getSpi().engineSign();
     }
 
     /**
@@ -180,7 +213,14 @@ public class SignatureAlgorithm extends Algorithm {
      * @return the result of the {@link java.security.Signature#getAlgorithm} method
      */
     public String getJCEAlgorithmString() {
-        return signatureAlgorithm.engineGetJCEAlgorithmString();
+        try {
+            return getSpi().engineGetJCEAlgorithmString();
+        } catch (XMLSignatureException ex) {
+            if (log.isDebugEnabled()) {
+                log.debug(ex);
+            }
+            return null;
+        }
     }
 
     /**
@@ -189,7 +229,14 @@ public class SignatureAlgorithm extends Algorithm {
      * @return The Provider of this Signature Algorithm
      */
     public String getJCEProviderName() {
-        return signatureAlgorithm.engineGetJCEProviderName();
+        try {
+            return getSpi().engineGetJCEProviderName();
+        } catch (XMLSignatureException ex) {
+            if (log.isDebugEnabled()) {
+                log.debug(ex);
+            }
+            return null;
+        }
     }
 
     /**
@@ -200,7 +247,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void update(byte[] input) throws XMLSignatureException {
-        signatureAlgorithm.engineUpdate(input);
+        getSpi().engineUpdate(input);
     }
 
     /**
@@ -211,7 +258,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void update(byte input) throws XMLSignatureException {
-        signatureAlgorithm.engineUpdate(input);
+        getSpi().engineUpdate(input);
     }
 
     /**
@@ -224,7 +271,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void update(byte buf[], int offset, int len) throws XMLSignatureException {
-        signatureAlgorithm.engineUpdate(buf, offset, len);
+        getSpi().engineUpdate(buf, offset, len);
     }
 
     /**
@@ -235,7 +282,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void initSign(Key signingKey) throws XMLSignatureException {	   
-        signatureAlgorithm.engineInitSign(signingKey);
+        getSpi().engineInitSign(signingKey);
     }
 
     /**
@@ -248,7 +295,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void initSign(Key signingKey, SecureRandom secureRandom) throws XMLSignatureException {
-        signatureAlgorithm.engineInitSign(signingKey, secureRandom);
+        getSpi().engineInitSign(signingKey, secureRandom);
     }
 
     /**
@@ -262,7 +309,7 @@ public class SignatureAlgorithm extends Algorithm {
     public void initSign(
         Key signingKey, AlgorithmParameterSpec algorithmParameterSpec
     ) throws XMLSignatureException {
-        signatureAlgorithm.engineInitSign(signingKey, algorithmParameterSpec);
+        getSpi().engineInitSign(signingKey, algorithmParameterSpec);
     }
 
     /**
@@ -274,7 +321,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void setParameter(AlgorithmParameterSpec params) throws XMLSignatureException {
-        signatureAlgorithm.engineSetParameter(params);
+        getSpi().engineSetParameter(params);
     }
 
     /**
@@ -285,7 +332,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void initVerify(Key verificationKey) throws XMLSignatureException {
-        signatureAlgorithm.engineInitVerify(verificationKey);
+        getSpi().engineInitVerify(verificationKey);
     }
     
     /**
@@ -298,7 +345,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public boolean verify(byte[] signature) throws XMLSignatureException {
-        return signatureAlgorithm.engineVerify(signature);
+        return getSpi().engineVerify(signature);
     }
 
     /**
@@ -20,6 +20,7 @@ package org.apache.xml.security.encryption;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
@@ -125,6 +126,43 @@ public abstract class AbstractSerializer implements Serializer {
         return baos.toByteArray();
     }
 
+    /**
+     * __ADAPTED__
+     * 
+     * Writes the canonical form of the specified <code>Element</code> to
+     * the output stream provided, without an intermediate byte array.
+     * <p/>
+     * The canonicalizer closes its writer after each subtree, hence the
+     * output stream is expected to ignore <code>close()</code>.
+     *
+     * @param element the <code>Element</code> to serialize.
+     * @param os the target of the canonical octets
+     * @throws Exception
+     */
+    public void serializeToStream(Element element, OutputStream os) throws Exception {
+        canon.setWriter(os);
+        canon.notReset();
+        canon.canonicalizeSubtree(element);
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Writes the canonical form of the specified <code>NodeList</code> to
+     * the output stream provided, without an intermediate byte array.
+     * 
+     * @param content the <code>NodeList</code> to serialize.
+     * @param os the target of the canonical octets
+     * @throws Exception
+     */
+    public void serializeToStream(NodeList content, OutputStream os) throws Exception {
+        canon.setWriter(os);
+        canon.notReset();
+        for (int i = 0; i < content.getLength(); i++) {
+            canon.canonicalizeSubtree(content.item(i));
+        }
+    }
+
     /**
      * Use the Canonicalizer to serialize the node
      * @param node
@@ -22,11 +22,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 
-// import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
@@ -42,8 +41,6 @@ import org.xml.sax.SAXException;
 
 public class DocumentSerializer extends AbstractSerializer {
     
-    protected DocumentBuilderFactory dbf;
-
     /**
      * @param source
      * @param ctx
@@ -74,28 +71,23 @@ public class DocumentSerializer extends AbstractSerializer {
      */
     private Node deserialize(Node ctx, InputSource inputSource) throws XMLEncryptionException {
         try {
-            if (dbf == null) {
-
-            	dbf = DocumentBuilderFactory.newInstance();
-                dbf.setNamespaceAware(true);
-                
-                /*
-                 * __ADAPTED__ (c) 2012 Dr. Krusche & Partner PartG
-                 * 
-                 * The Android's DocumentBuilderFactoryImpl does not support the feature
-                 * XMLConstants.FEATURE_SECURE_PROCESSING
-                 * 
-                 * In addition, setting the attribute "http://xml.org/sax/features/namespaces"
-                 * is also NOT supported for Android's DocumentBuilderFactoryImpl
-                 */
-                
-                // dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
-                // dbf.setAttribute("http://xml.org/sax/features/namespaces", Boolean.TRUE);
-                dbf.setValidating(false);
-            
+            /*
+             * __ADAPTED__ (c) 2012 Dr. Krusche & Partner PartG
+             * 
+             * The Android's DocumentBuilderFactoryImpl does not support the feature
+             * XMLConstants.FEATURE_SECURE_PROCESSING
+             * 
+             * In addition, setting the attribute "http://xml.org/sax/features/namespaces"
+             * is also NOT supported for Android's DocumentBuilderFactoryImpl; the pooled
+             * builders of XMLUtils take care of both restrictions
+             */
+            DocumentBuilder db = XMLUtils.createDocumentBuilder();
+            Document d = null;
+            try {
+                d = db.parse(inputSource);
+            } finally {
+                XMLUtils.repoolDocumentBuilder(db);
             }
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document d = db.parse(inputSource);
 
             Document contextDocument = null;
             if (Node.DOCUMENT_NODE == ctx.getNodeType()) {
@@ -0,0 +1,412 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.encryption;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.xml.security.utils.Constants;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * __ADAPTED__
+ *
+ * Converts <code>String</code>s into <code>Node</code>s and visa versa.
+ * In contrast to the {@link DocumentSerializer}, the decrypted octets are
+ * parsed straight into the context document: no wrapper with the namespace
+ * declarations of the ancestors is built, no temporary document is created
+ * and no nodes are imported.
+ * <p/>
+ * The octets are parsed without namespace processing; prefixes are bound
+ * by the declarations within the fragment, or else by the namespaces in
+ * scope of the context node.
+ */
+public class FragmentSerializer extends AbstractSerializer {
+
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    private static final String START_TAG = "<dummy>";
+    private static final String END_TAG = "</dummy>";
+
+    private static final byte[] START_TAG_BYTES = START_TAG.getBytes();
+    private static final byte[] END_TAG_BYTES = END_TAG.getBytes();
+
+    private static final DefaultHandler EMPTY_HANDLER = new DefaultHandler();
+
+    private static SAXParserFactory saxParserFactory;
+
+    private static ThreadLocal<XMLReader> xmlReaders = new ThreadLocal<XMLReader>();
+
+    /**
+     * @param source
+     * @param ctx
+     * @return the Node resulting from the parse of the source
+     * @throws XMLEncryptionException
+     */
+    public Node deserialize(byte[] source, Node ctx) throws XMLEncryptionException {
+        InputStream is = new SequenceInputStream(
+            new ByteArrayInputStream(START_TAG_BYTES),
+            new SequenceInputStream(
+                new ByteArrayInputStream(source), new ByteArrayInputStream(END_TAG_BYTES)
+            )
+        );
+        InputSource inputSource = new InputSource(is);
+        inputSource.setEncoding("UTF-8");
+        return deserialize(ctx, inputSource);
+    }
+
+    /**
+     * @param source
+     * @param ctx
+     * @return the Node resulting from the parse of the source
+     * @throws XMLEncryptionException
+     */
+    public Node deserialize(String source, Node ctx) throws XMLEncryptionException {
+        return deserialize(ctx, new InputSource(new FragmentReader(source)));
+    }
+
+    /**
+     * @param ctx
+     * @param inputSource
+     * @return the Node resulting from the parse of the source
+     * @throws XMLEncryptionException
+     */
+    private Node deserialize(Node ctx, InputSource inputSource) throws XMLEncryptionException {
+        Document contextDocument = null;
+        if (Node.DOCUMENT_NODE == ctx.getNodeType()) {
+            contextDocument = (Document)ctx;
+        } else {
+            contextDocument = ctx.getOwnerDocument();
+        }
+
+        FragmentHandler handler = new FragmentHandler(contextDocument, ctx);
+        try {
+            XMLReader reader = createXMLReader();
+            try {
+                reader.setContentHandler(handler);
+                reader.setErrorHandler(handler);
+                setLexicalHandler(reader, handler);
+
+                reader.parse(inputSource);
+            } finally {
+                repoolXMLReader(reader);
+            }
+            return handler.getResult();
+
+        } catch (SAXException se) {
+            throw new XMLEncryptionException("empty", se);
+        } catch (ParserConfigurationException pce) {
+            throw new XMLEncryptionException("empty", pce);
+        } catch (IOException ioe) {
+            throw new XMLEncryptionException("empty", ioe);
+        }
+    }
+
+    /*
+     * An XMLReader is borrowed from a per-thread pool and must be handed
+     * back with repoolXMLReader once parsing is done
+     */
+    private static XMLReader createXMLReader() throws ParserConfigurationException, SAXException {
+        XMLReader reader = xmlReaders.get();
+        if (reader != null) {
+            xmlReaders.set(null);
+            return reader;
+        }
+        synchronized (FragmentSerializer.class) {
+            if (saxParserFactory == null) {
+                saxParserFactory = newSAXParserFactory();
+            }
+            return saxParserFactory.newSAXParser().getXMLReader();
+        }
+    }
+
+    private static void repoolXMLReader(XMLReader reader) {
+        // the handlers refer to the context document
+        reader.setContentHandler(EMPTY_HANDLER);
+        reader.setErrorHandler(EMPTY_HANDLER);
+        if (setLexicalHandler(reader, null)) {
+            xmlReaders.set(reader);
+        }
+    }
+
+    private static boolean setLexicalHandler(XMLReader reader, LexicalHandler handler) {
+        try {
+            reader.setProperty(LEXICAL_HANDLER, handler);
+            return true;
+        } catch (SAXException ex) {
+            // comments are not reported by this parser
+            return false;
+        }
+    }
+
+    private static SAXParserFactory newSAXParserFactory() {
+        SAXParserFactory spf = SAXParserFactory.newInstance();
+        spf.setNamespaceAware(false);
+        spf.setValidating(false);
+        try {
+            spf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        } catch (Exception ex) {
+            // not supported by Android's SAXParserFactoryImpl; as the
+            // fragment is wrapped, it cannot contain a document type
+            // declaration
+        }
+        return spf;
+    }
+
+    /**
+     * Builds the nodes of the fragment in the context document; the
+     * wrapper element is skipped.
+     */
+    private static class FragmentHandler extends DefaultHandler implements LexicalHandler {
+
+        private static final String UNBOUND = "";
+
+        private final Document doc;
+        private final Node ctx;
+
+        private final DocumentFragment result;
+        private Node current;
+
+        private int depth = 0;
+
+        private final StringBuilder text = new StringBuilder();
+        private boolean cdata = false;
+
+        // namespace declarations of the fragment as (prefix, uri) pairs
+        private final List<String> bindings = new ArrayList<String>();
+        private final List<Integer> scopes = new ArrayList<Integer>();
+
+        // namespaces in scope of the context node
+        private final Map<String, String> inherited = new HashMap<String, String>();
+
+        FragmentHandler(Document doc, Node ctx) {
+            this.doc = doc;
+            this.ctx = ctx;
+            this.result = doc.createDocumentFragment();
+            this.current = result;
+        }
+
+        DocumentFragment getResult() {
+            return result;
+        }
+
+        public void startElement(String uri, String localName, String qName, Attributes atts)
+            throws SAXException {
+            depth++;
+            if (depth == 1) {
+                // the wrapper
+                return;
+            }
+            flushText();
+
+            scopes.add(Integer.valueOf(bindings.size()));
+            int len = atts.getLength();
+            for (int i = 0; i < len; i++) {
+                String name = atts.getQName(i);
+                if (name.equals("xmlns")) {
+                    bindings.add(null);
+                    bindings.add(atts.getValue(i));
+                } else if (name.startsWith("xmlns:")) {
+                    bindings.add(name.substring(6));
+                    bindings.add(atts.getValue(i));
+                }
+            }
+
+            Element element = doc.createElementNS(getNamespaceURI(qName, true), qName);
+            for (int i = 0; i < len; i++) {
+                String name = atts.getQName(i);
+                if (name.equals("xmlns") || name.startsWith("xmlns:")) {
+                    element.setAttributeNS(Constants.NamespaceSpecNS, name, atts.getValue(i));
+                } else {
+                    element.setAttributeNS(getNamespaceURI(name, false), name, atts.getValue(i));
+                }
+            }
+
+            current.appendChild(element);
+            current = element;
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            flushText();
+            if (depth > 1) {
+                int size = scopes.remove(scopes.size() - 1).intValue();
+                while (bindings.size() > size) {
+                    bindings.remove(bindings.size() - 1);
+                }
+                current = current.getParentNode();
+            }
+            depth--;
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            if (depth > 0) {
+                text.append(ch, start, length);
+            }
+        }
+
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            characters(ch, start, length);
+        }
+
+        public void processingInstruction(String target, String data) {
+            if (depth > 0) {
+                flushText();
+                current.appendChild(doc.createProcessingInstruction(target, data));
+            }
+        }
+
+        public void comment(char[] ch, int start, int length) {
+            if (depth > 0) {
+                flushText();
+                current.appendChild(doc.createComment(new String(ch, start, length)));
+            }
+        }
+
+        public void startCDATA() {
+            flushText();
+            cdata = true;
+        }
+
+        public void endCDATA() {
+            flushText();
+            cdata = false;
+        }
+
+        public void startDTD(String name, String publicId, String systemId) {
+        }
+
+        public void endDTD() {
+        }
+
+        public void startEntity(String name) {
+        }
+
+        public void endEntity(String name) {
+        }
+
+        private void flushText() {
+            if (text.length() == 0) {
+                return;
+            }
+            if (cdata) {
+                current.appendChild(doc.createCDATASection(text.toString()));
+            } else {
+                current.appendChild(doc.createTextNode(text.toString()));
+            }
+            text.setLength(0);
+        }
+
+        /**
+         * @param qName
+         * @param isElement unprefixed attributes are in no namespace
+         * @return the namespace URI of the qualified name
+         * @throws SAXException if the prefix is not bound
+         */
+        private String getNamespaceURI(String qName, boolean isElement) throws SAXException {
+            int colon = qName.indexOf(':');
+            String prefix = (colon < 0) ? null : qName.substring(0, colon);
+            if (prefix == null && !isElement) {
+                return null;
+            }
+            if ("xml".equals(prefix)) {
+                return Constants.XML_LANG_SPACE_SpecNS;
+            }
+
+            String uri = lookup(prefix);
+            if (uri == null || uri.length() == 0) {
+                if (prefix != null) {
+                    throw new SAXException("Namespace prefix " + prefix + " is not bound");
+                }
+                return null;
+            }
+            return uri;
+        }
+
+        private String lookup(String prefix) {
+            for (int i = bindings.size() - 2; i >= 0; i -= 2) {
+                String bound = bindings.get(i);
+                if (prefix == null ? bound == null : prefix.equals(bound)) {
+                    return bindings.get(i + 1);
+                }
+            }
+
+            String uri = inherited.get(prefix);
+            if (uri == null) {
+                uri = ctx.lookupNamespaceURI(prefix);
+                inherited.put(prefix, (uri == null) ? UNBOUND : uri);
+            }
+            return uri;
+        }
+    }
+
+    /**
+     * Reads the wrapper start tag, the fragment and the wrapper end tag
+     * without concatenating them.
+     */
+    private static class FragmentReader extends Reader {
+
+        private final Reader[] readers;
+        private int index = 0;
+
+        FragmentReader(String source) {
+            this.readers = new Reader[] {
+                new StringReader(START_TAG), new StringReader(source), new StringReader(END_TAG)
+            };
+        }
+
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            while (index < readers.length) {
+                int n = readers[index].read(cbuf, off, len);
+                if (n > 0) {
+                    return n;
+                }
+                index++;
+            }
+            return -1;
+        }
+
+        public void close() throws IOException {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i].close();
+            }
+        }
+    }
+
+}
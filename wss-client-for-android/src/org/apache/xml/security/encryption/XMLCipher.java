@@ -18,9 +18,11 @@
  */
 package org.apache.xml.security.encryption;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Constructor;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.InvalidAlgorithmParameterException;
@@ -29,6 +31,7 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.MGF1ParameterSpec;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -40,6 +43,7 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.OAEPParameterSpec;
 import javax.crypto.spec.PSource;
@@ -57,6 +61,7 @@ import org.apache.xml.security.signature.XMLSignatureException;
 import org.apache.xml.security.transforms.InvalidTransformException;
 import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.utils.Base64;
+import org.apache.xml.security.utils.Base64OutputStream;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.ElementProxy;
 import org.apache.xml.security.utils.EncryptionConstants;
@@ -81,6 +86,9 @@ public class XMLCipher {
     private static de.kp.logging.Log log = 
         de.kp.logging.LogFactory.getLog(XMLCipher.class);
 
+    /** __ADAPTED__ GCMParameterSpec(int, byte[]), if available */
+    private static final Constructor<?> gcmParameterSpec = getGCMParameterSpec();
+
     /** Triple DES EDE (192 bit key) in CBC mode */
     public static final String TRIPLEDES =                   
         EncryptionConstants.ALGO_ID_BLOCKCIPHER_TRIPLEDES;
@@ -302,7 +310,8 @@ public class XMLCipher {
         }
 
         if (serializer == null) {
-            serializer = new DocumentSerializer();
+            // __ADAPTED__ parse decrypted octets straight into the document
+            serializer = new FragmentSerializer();
         }
         serializer.setCanonicalizer(this.canon);
         
@@ -1039,94 +1048,32 @@ public class XMLCipher {
             throw new XMLEncryptionException("XMLCipher instance without transformation specified");
         }
 
-        byte[] serializedOctets = null;
-        if (serializedData == null) {
-            if (type.equals(EncryptionConstants.TYPE_CONTENT)) {
-                NodeList children = element.getChildNodes();
-                if (null != children) {
-                    serializedOctets = serializer.serializeToByteArray(children);
-                } else {
-                    Object exArgs[] = { "Element has no content." };
-                    throw new XMLEncryptionException("empty", exArgs);
-                }
-            } else {
-                serializedOctets = serializer.serializeToByteArray(element);
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Serialized octets:\n" + serializedOctets);
-            }
-        }
-
-        byte[] encryptedBytes = null;
-
         // Now create the working cipher if none was created already
-        Cipher c;
-        if (contextCipher == null) {
-            c = constructCipher(algorithm, null);
-        } else {
-            c = contextCipher;
-        }
-        // Now perform the encryption
-
-        try {
-            // The Spec mandates a 96-bit IV for GCM algorithms
-            if (AES_128_GCM.equals(algorithm) || AES_192_GCM.equals(algorithm) 
-                || AES_256_GCM.equals(algorithm)) {
-                if (random == null) {
-                    random = SecureRandom.getInstance("SHA1PRNG");
-                }
-                byte[] temp = new byte[12];
-                random.nextBytes(temp);
-                IvParameterSpec paramSpec = new IvParameterSpec(temp);
-                c.init(cipherMode, key, paramSpec);
-            } else {
-                c.init(cipherMode, key);
-            }
-        } catch (InvalidKeyException ike) {
-            throw new XMLEncryptionException("empty", ike);
-        } catch (NoSuchAlgorithmException ex) {
-            throw new XMLEncryptionException("empty", ex);
-        }
+        Cipher c = initEncryptionCipher();
 
+        // __ADAPTED__ the plaintext flows through the cipher and the base64 
+        // encoder directly into the CipherValue; apart from the resulting 
+        // text, only buffers of a fixed size are used
+        StringBuilder sb = new StringBuilder();
+        Base64OutputStream b64os = new Base64OutputStream(sb);
         try {
             if (serializedData != null) {
+                b64os.write(c.getIV());
+                CipherStream cs = new CipherStream(c, b64os);
                 int numBytes;
                 byte[] buf = new byte[8192];
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 while ((numBytes = serializedData.read(buf)) != -1) {
-                    byte[] data = c.update(buf, 0, numBytes);
-                    baos.write(data);
+                    cs.write(buf, 0, numBytes);
                 }
-                baos.write(c.doFinal());
-                encryptedBytes = baos.toByteArray();
+                cs.finish();
             } else {
-                encryptedBytes = c.doFinal(serializedOctets);
-                if (log.isDebugEnabled()) {
-                    log.debug("Expected cipher.outputSize = " +
-                        Integer.toString(c.getOutputSize(serializedOctets.length)));
-                }
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Actual cipher.outputSize = " 
-                             + Integer.toString(encryptedBytes.length));
+                encryptToStream(c, element, type, b64os);
             }
-        } catch (IllegalStateException ise) {
-            throw new XMLEncryptionException("empty", ise);
-        } catch (IllegalBlockSizeException ibse) {
-            throw new XMLEncryptionException("empty", ibse);
-        } catch (BadPaddingException bpe) {
-            throw new XMLEncryptionException("empty", bpe);
-        } catch (UnsupportedEncodingException uee) {
-            throw new XMLEncryptionException("empty", uee);
+            b64os.finish();
+        } catch (IOException ex) {
+            throw new XMLEncryptionException("empty", ex);
         }
-
-        // Now build up to a properly XML Encryption encoded octet stream
-        // IvParameterSpec iv;
-        byte[] iv = c.getIV();
-        byte[] finalEncryptedBytes = new byte[iv.length + encryptedBytes.length];
-        System.arraycopy(iv, 0, finalEncryptedBytes, 0, iv.length);
-        System.arraycopy(encryptedBytes, 0, finalEncryptedBytes, iv.length, encryptedBytes.length);
-        String base64EncodedEncryptedOctets = Base64.encode(finalEncryptedBytes);
+        String base64EncodedEncryptedOctets = sb.toString();
 
         if (log.isDebugEnabled()) {
             log.debug("Encrypted octets:\n" + base64EncodedEncryptedOctets);
@@ -1152,6 +1099,126 @@ public class XMLCipher {
         return ed;
     }
 
+    /**
+     * __ADAPTED__
+     * 
+     * Encrypts an <code>Element</code> or its content and writes the IV,
+     * followed by the cipher text, to the output stream provided, e.g.
+     * the content of an attachment, that is referred to by a 
+     * <code>CipherReference</code>. The plaintext is never held in memory
+     * as a whole; the output stream is neither flushed nor closed.
+     *
+     * This does not change the source document in any way.
+     *
+     * @param context the context <code>Document</code>.
+     * @param element the <code>Element</code> that will be encrypted.
+     * @param contentMode <code>true</code> to encrypt element's content only,
+     *    <code>false</code> otherwise
+     * @param os the target of the encrypted octets
+     * @throws Exception
+     */
+    public void encryptData(
+        Document context, Element element, boolean contentMode, OutputStream os
+    ) throws /* XMLEncryption */ Exception {
+        if (null == element) {
+            throw new NullPointerException("Element unexpectedly null...");
+        }
+        if (null == os) {
+            throw new NullPointerException("Output stream unexpectedly null...");
+        }
+        if (cipherMode != ENCRYPT_MODE && log.isDebugEnabled()) {
+            log.debug("XMLCipher unexpectedly not in ENCRYPT_MODE...");
+        }
+        contextDocument = context;
+
+        if (algorithm == null) {
+            throw new XMLEncryptionException("XMLCipher instance without transformation specified");
+        }
+
+        Cipher c = initEncryptionCipher();
+        String type = 
+            contentMode ? EncryptionConstants.TYPE_CONTENT : EncryptionConstants.TYPE_ELEMENT;
+        try {
+            encryptToStream(c, element, type, os);
+        } catch (IOException ex) {
+            throw new XMLEncryptionException("empty", ex);
+        }
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Writes the IV and the encrypted canonical form of the element (or 
+     * its content) to the output stream.
+     */
+    private void encryptToStream(
+        Cipher c, Element element, String type, OutputStream os
+    ) throws Exception {
+        os.write(c.getIV());
+        CipherStream cs = new CipherStream(c, os);
+        if (type.equals(EncryptionConstants.TYPE_CONTENT)) {
+            NodeList children = element.getChildNodes();
+            if (null == children) {
+                Object exArgs[] = { "Element has no content." };
+                throw new XMLEncryptionException("empty", exArgs);
+            }
+            if (serializer instanceof AbstractSerializer) {
+                ((AbstractSerializer)serializer).serializeToStream(children, cs);
+            } else {
+                cs.write(serializer.serializeToByteArray(children));
+            }
+        } else {
+            if (serializer instanceof AbstractSerializer) {
+                ((AbstractSerializer)serializer).serializeToStream(element, cs);
+            } else {
+                cs.write(serializer.serializeToByteArray(element));
+            }
+        }
+        cs.finish();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Actual cipher.outputSize = " + Long.toString(cs.getOutputSize()));
+        }
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Create the working cipher if none was created already, and 
+     * initialize it for encryption
+     */
+    private Cipher initEncryptionCipher() throws XMLEncryptionException {
+        Cipher c;
+        if (contextCipher == null) {
+            c = constructCipher(algorithm, null);
+        } else {
+            c = contextCipher;
+        }
+
+        try {
+            // The Spec mandates a 96-bit IV for GCM algorithms
+            if (AES_128_GCM.equals(algorithm) || AES_192_GCM.equals(algorithm) 
+                || AES_256_GCM.equals(algorithm)) {
+                if (random == null) {
+                    random = SecureRandom.getInstance("SHA1PRNG");
+                }
+                byte[] temp = new byte[12];
+                random.nextBytes(temp);
+                AlgorithmParameterSpec paramSpec = constructBlockCipherParameters(algorithm, temp);
+                c.init(cipherMode, key, paramSpec);
+            } else {
+                c.init(cipherMode, key);
+            }
+        } catch (InvalidKeyException ike) {
+            throw new XMLEncryptionException("empty", ike);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new XMLEncryptionException("empty", ex);
+        } catch (InvalidAlgorithmParameterException ex) {
+            throw new XMLEncryptionException("empty", ex);
+        }
+        return c;
+    }
+
     /**
      * Returns an <code>EncryptedData</code> interface. Use this operation if
      * you want to load an <code>EncryptedData</code> structure from a DOM 
@@ -1692,7 +1759,7 @@ public class XMLCipher {
         // necessary bytes into a dedicated array.
 
         System.arraycopy(encryptedBytes, 0, ivBytes, 0, ivLen);
-        IvParameterSpec iv = new IvParameterSpec(ivBytes);		
+        AlgorithmParameterSpec iv = constructBlockCipherParameters(alg, ivBytes);
 
         try {
             c.init(cipherMode, key, iv);
@@ -1711,6 +1778,142 @@ public class XMLCipher {
         }
     }
 
+    /**
+     * __ADAPTED__
+     * 
+     * Build the parameters of the block cipher from the IV. GCM requires a
+     * GCMParameterSpec (with a 128 bit tag) from Java 7 on; as this class is
+     * not available on older platforms, it is looked up by reflection, and
+     * an IvParameterSpec is used, if it is missing
+     * 
+     * @param algorithm
+     * @param iv
+     * @return the parameters of the block cipher
+     */
+    private static AlgorithmParameterSpec constructBlockCipherParameters(String algorithm, byte[] iv) {
+        if ((AES_128_GCM.equals(algorithm) || AES_192_GCM.equals(algorithm) 
+            || AES_256_GCM.equals(algorithm)) && gcmParameterSpec != null) {
+            try {
+                return (AlgorithmParameterSpec) gcmParameterSpec.newInstance(Integer.valueOf(128), iv);
+            } catch (Exception ex) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to create GCMParameterSpec: " + ex.getMessage());
+                }
+            }
+        }
+        return new IvParameterSpec(iv);
+    }
+
+    private static Constructor<?> getGCMParameterSpec() {
+        try {
+            Class<?> gcmSpecClass = Class.forName("javax.crypto.spec.GCMParameterSpec");
+            return gcmSpecClass.getConstructor(Integer.TYPE, byte[].class);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Passes the octets written to it through an initialized cipher into
+     * the target stream, using buffers of a fixed size. The canonicalizer
+     * writes single octets and closes its writer after each subtree; 
+     * therefore octets are collected before they are encrypted, and 
+     * <code>close()</code> is ignored. {@link #finish()} completes the 
+     * encryption.
+     * 
+     * javax.crypto.CipherOutputStream is not used, as it closes the target
+     * on <code>close()</code> and silently drops padding errors.
+     */
+    private static class CipherStream extends OutputStream {
+
+        private static final int BUFFER_SIZE = 8192;
+
+        private final Cipher cipher;
+        private final OutputStream os;
+
+        private final byte[] in = new byte[BUFFER_SIZE];
+        private int count = 0;
+
+        private byte[] out;
+        private long outputSize = 0;
+
+        CipherStream(Cipher cipher, OutputStream os) {
+            this.cipher = cipher;
+            this.os = os;
+            this.out = new byte[cipher.getOutputSize(BUFFER_SIZE)];
+        }
+
+        public void write(int b) throws IOException {
+            if (count == BUFFER_SIZE) {
+                update();
+            }
+            in[count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == BUFFER_SIZE) {
+                    update();
+                }
+                int n = Math.min(len, BUFFER_SIZE - count);
+                System.arraycopy(b, off, in, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public void close() {
+            // the canonicalizer closes its writer after each subtree
+        }
+
+        void finish() throws XMLEncryptionException {
+            try {
+                ensureCapacity(cipher.getOutputSize(count));
+                int len = cipher.doFinal(in, 0, count, out, 0);
+                count = 0;
+                os.write(out, 0, len);
+                outputSize += len;
+            } catch (IllegalStateException ise) {
+                throw new XMLEncryptionException("empty", ise);
+            } catch (IllegalBlockSizeException ibse) {
+                throw new XMLEncryptionException("empty", ibse);
+            } catch (BadPaddingException bpe) {
+                throw new XMLEncryptionException("empty", bpe);
+            } catch (ShortBufferException sbe) {
+                throw new XMLEncryptionException("empty", sbe);
+            } catch (IOException ioe) {
+                throw new XMLEncryptionException("empty", ioe);
+            }
+        }
+
+        long getOutputSize() {
+            return outputSize;
+        }
+
+        private void update() throws IOException {
+            try {
+                ensureCapacity(cipher.getOutputSize(count));
+                int len = cipher.update(in, 0, count, out, 0);
+                count = 0;
+                os.write(out, 0, len);
+                outputSize += len;
+            } catch (ShortBufferException sbe) {
+                IOException ioe = new IOException("Cipher output buffer too small");
+                ioe.initCause(sbe);
+                throw ioe;
+            }
+        }
+
+        private void ensureCapacity(int size) {
+            if (out.length < size) {
+                out = new byte[size];
+            }
+        }
+    }
+
     /*
      * Expose the interface for creating XML Encryption objects
      */
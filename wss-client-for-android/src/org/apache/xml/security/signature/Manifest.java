@@ -25,6 +25,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -56,6 +63,14 @@ public class Manifest extends SignatureElementProxy {
      */
     public static final int MAXIMUM_REFERENCE_COUNT = 30;
 
+    /**
+     * __ADAPTED__
+     *
+     * The minimum number of references, that are verified in parallel, if
+     * a verification executor is set.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4;
+
     /** {@link de.kp.logging} logging facility */
     private static de.kp.logging.Log log = 
         de.kp.logging.LogFactory.getLog(Manifest.class);
@@ -75,6 +90,10 @@ public class Manifest extends SignatureElementProxy {
     
     private boolean secureValidation;
 
+    /** __ADAPTED__ executor to verify the references in parallel */
+    private ExecutorService verificationExecutor = null;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
     /**
      * Constructs {@link Manifest}
      *
@@ -324,16 +343,42 @@ public class Manifest extends SignatureElementProxy {
         }
 
         this.verificationResults = new boolean[referencesEl.length];
+
+        // __ADAPTED__ the digests are computed in parallel, if an executor
+        // is set; the results are evaluated in document order below
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        List<Future<Boolean>> digestResults = this.submitReferenceVerifications(aborted);
+        boolean completed = false;
+        try {
+            boolean verify = this.evaluateReferences(followManifests, digestResults);
+            completed = true;
+            return verify;
+        } finally {
+            if (!completed && digestResults != null) {
+                // the pending verifications are skipped; the started ones
+                // still read the document and are awaited before returning
+                aborted.set(true);
+                awaitDigestResults(digestResults);
+            }
+        }
+    }
+
+    private boolean evaluateReferences(boolean followManifests, List<Future<Boolean>> digestResults)
+        throws MissingResourceFailureException, XMLSecurityException {
         boolean verify = true;
         for (int i = 0; i < this.referencesEl.length; i++) {
-            Reference currentRef =
-                new Reference(referencesEl[i], this.baseURI, this, secureValidation);
-
-            this.references.set(i, currentRef);
+            Reference currentRef = null;
+            if (digestResults == null) {
+                currentRef = new Reference(referencesEl[i], this.baseURI, this, secureValidation);
+                this.references.set(i, currentRef);
+            } else {
+                currentRef = this.references.get(i);
+            }
 
             // if only one item does not verify, the whole verification fails
             try {
-                boolean currentRefVerified = currentRef.verify();
+                boolean currentRefVerified = (digestResults == null) 
+                    ? currentRef.verify() : getDigestResult(digestResults.get(i));
 
                 this.setVerificationResult(i, currentRefVerified);
 
@@ -387,6 +432,8 @@ public class Manifest extends SignatureElementProxy {
 
                         referencedManifest.perManifestResolvers = this.perManifestResolvers;
                         referencedManifest.resolverProperties = this.resolverProperties;
+                        referencedManifest.verificationExecutor = this.verificationExecutor;
+                        referencedManifest.parallelThreshold = this.parallelThreshold;
 
                         boolean referencedManifestValid =
                             referencedManifest.verifyReferences(followManifests);
@@ -420,6 +467,150 @@ public class Manifest extends SignatureElementProxy {
         return verify;
     }
 
+    /**
+     * __ADAPTED__
+     *
+     * Creates all references and submits their verification to the
+     * verification executor, if one is set and the number of references
+     * reaches the parallel threshold.
+     *
+     * @param aborted if set, the verifications, that have not yet started,
+     * are skipped
+     * @return the pending verification results in document order, or null
+     * if the references are verified sequentially
+     * @throws XMLSecurityException
+     */
+    private List<Future<Boolean>> submitReferenceVerifications(final AtomicBoolean aborted) 
+        throws XMLSecurityException {
+        ExecutorService executor = this.verificationExecutor;
+        if (executor == null || this.referencesEl.length < this.parallelThreshold) {
+            return null;
+        }
+
+        // the references are created by the calling thread, so that
+        // invalid references fail before any task is submitted
+        for (int i = 0; i < this.referencesEl.length; i++) {
+            this.references.set(i, 
+                new Reference(referencesEl[i], this.baseURI, this, secureValidation)
+            );
+        }
+
+        List<Future<Boolean>> digestResults = new ArrayList<Future<Boolean>>(this.referencesEl.length);
+        for (int i = 0; i < this.referencesEl.length; i++) {
+            final Reference reference = this.references.get(i);
+            Callable<Boolean> task = new Callable<Boolean>() {
+                public Boolean call() throws XMLSecurityException {
+                    if (aborted.get()) {
+                        return Boolean.FALSE;
+                    }
+                    return Boolean.valueOf(reference.verify());
+                }
+            };
+
+            try {
+                digestResults.add(executor.submit(task));
+            } catch (RejectedExecutionException ex) {
+                // saturated or shut down executor; verify in this thread
+                FutureTask<Boolean> digestResult = new FutureTask<Boolean>(task);
+                digestResult.run();
+                digestResults.add(digestResult);
+            }
+        }
+        return digestResults;
+    }
+
+    private static boolean getDigestResult(Future<Boolean> digestResult) 
+        throws XMLSecurityException {
+        try {
+            return digestResult.get().booleanValue();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLSecurityException("empty", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof XMLSecurityException) {
+                throw (XMLSecurityException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new XMLSecurityException("empty", ex);
+        }
+    }
+
+    /**
+     * Waits for all verifications to complete and ignores their results.
+     *
+     * @param digestResults
+     */
+    private static void awaitDigestResults(List<Future<Boolean>> digestResults) {
+        boolean interrupted = false;
+        for (Future<Boolean> digestResult : digestResults) {
+            while (true) {
+                try {
+                    digestResult.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * __ADAPTED__
+     *
+     * Sets the executor, that computes the digests of the references in
+     * parallel during {@link #verifyReferences(boolean)}; each reference
+     * canonicalizes an independent subtree. The references are still
+     * created and their results evaluated by the calling thread, in
+     * document order, and the exceptions are the same as with the
+     * sequential verification.
+     * <p>
+     * The document must not be modified while the references are verified,
+     * and the caller must supply a DOM implementation, that is safe for
+     * concurrent reads.
+     *
+     * @param executor the executor, or null to verify sequentially
+     */
+    public void setVerificationExecutor(ExecutorService executor) {
+        this.verificationExecutor = executor;
+    }
+
+    /**
+     * @return the executor to verify the references in parallel, or null
+     */
+    public ExecutorService getVerificationExecutor() {
+        return this.verificationExecutor;
+    }
+
+    /**
+     * __ADAPTED__
+     *
+     * @param parallelThreshold the minimum number of references, that are
+     * verified in parallel; with fewer references, the task hand-off costs
+     * more than the digests of the typical (small) SOAP parts
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 2) {
+            throw new IllegalArgumentException("Parallel threshold must be at least 2");
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * @return the minimum number of references, that are verified in parallel
+     */
+    public int getParallelThreshold() {
+        return this.parallelThreshold;
+    }
+
     /**
      * Method setVerificationResult
      *
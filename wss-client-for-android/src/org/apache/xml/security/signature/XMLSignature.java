@@ -619,6 +619,53 @@ public final class XMLSignature extends SignatureElementProxy {
         }
     }
 
+    /**
+     * __ADAPTED__
+     * 
+     * Digests all References in the SignedInfo, calculates the signature value 
+     * with a SignatureAlgorithm, that is already initialized for signing, and 
+     * sets it in the SignatureValue Element; this avoids to instantiate and 
+     * initialize a signature engine for each signature.
+     * 
+     * After this method returns, the SignatureAlgorithm is in the state after
+     * initialization and may be used for the next signature; if an exception 
+     * is thrown, its state is undefined and it MUST be discarded.
+     *
+     * @param signer the initialized SignatureAlgorithm
+     * @throws XMLSignatureException
+     */
+    public void sign(SignatureAlgorithm signer) throws XMLSignatureException {
+
+        SignedInfo si = this.getSignedInfo();
+        if (!signer.getURI().equals(si.getSignatureMethodURI())) {
+            Object exArgs[] = { signer.getURI(), si.getSignatureMethodURI() };
+            throw new XMLSignatureException("algorithms.AlgorithmMismatch", exArgs);
+        }
+
+        try {
+            // generate digest values for all References in this SignedInfo
+            si.generateDigestValues();
+            OutputStream so = new UnsyncBufferedOutputStream(new SignerOutputStream(signer));
+            // get the canonicalized bytes from SignedInfo
+            si.signInOctetStream(so);
+
+            so.close();
+
+            // set them on the SignatureValue element
+            this.setSignatureValueElement(signer.sign());
+        } catch (IOException ex) {
+            throw new XMLSignatureException("empty", ex);
+        } catch (XMLSignatureException ex) {
+            throw ex;
+        } catch (CanonicalizationException ex) {
+            throw new XMLSignatureException("empty", ex);
+        } catch (InvalidCanonicalizerException ex) {
+            throw new XMLSignatureException("empty", ex);
+        } catch (XMLSecurityException ex) {
+            throw new XMLSignatureException("empty", ex);
+        }
+    }
+
     /**
      * Adds a {@link ResourceResolver} to enable the retrieval of resources.
      *
@@ -55,7 +55,8 @@ public class Base64 {
     private static final int SIGN = -128;
     private static final char PAD = '=';   
     private static final byte [] base64Alphabet = new byte[BASELENGTH];
-    private static final char [] lookUpBase64Alphabet = new char[LOOKUPLENGTH];
+    /** __ADAPTED__ package visible for Base64OutputStream */
+    static final char [] lookUpBase64Alphabet = new char[LOOKUPLENGTH];
 
     static {
         for (int i = 0; i < BASELENGTH; i++) {
@@ -251,20 +252,32 @@ public class Base64 {
      * @throws Base64DecodingException
      */
     public static final byte[] decode(Element element) throws Base64DecodingException {
-
+        /*
+         * __ADAPTED__ 
+         * 
+         * The text nodes are decoded one after the other, without joining
+         * them into an intermediate String
+         */
+        int length = 0;
         Node sibling = element.getFirstChild();
-        StringBuffer sb = new StringBuffer();
-
         while (sibling != null) {
             if (sibling.getNodeType() == Node.TEXT_NODE) {
-                Text t = (Text) sibling;
+                length += ((Text) sibling).getLength();
+            }
+            sibling = sibling.getNextSibling();
+        }
+
+        Decoder decoder = new Decoder(new byte[getMaxDecodedLength(length)], 0);
 
-                sb.append(t.getData());
+        sibling = element.getFirstChild();
+        while (sibling != null) {
+            if (sibling.getNodeType() == Node.TEXT_NODE) {
+                decoder.decode(((Text) sibling).getData());
             }
             sibling = sibling.getNextSibling();
         }
 
-        return decode(sb.toString());
+        return trim(decoder.dst, decoder.finish());
     }
 
     /**
@@ -364,105 +377,92 @@ public class Base64 {
      * @return a <code>String</code> with encoded data
      */
     public static final String  encode(byte[] binaryData,int length) {
-        if (length < 4) {
-            length = Integer.MAX_VALUE;
-        }
-
         if (binaryData == null) {
             return null;
         }
 
-        int lengthDataBits = binaryData.length * EIGHTBIT;
-        if (lengthDataBits == 0) {
-            return "";
-        }
-
-        int fewerThan24bits = lengthDataBits % TWENTYFOURBITGROUP;
-        int numberTriplets = lengthDataBits / TWENTYFOURBITGROUP;
-        int numberQuartet = fewerThan24bits != 0 ? numberTriplets + 1 : numberTriplets;
-        int quartesPerLine = length / 4;
-        int numberLines = (numberQuartet - 1) / quartesPerLine;
-        char encodedData[] = null;
-
-        encodedData = new char[numberQuartet * 4 + numberLines];
+        // __ADAPTED__ 
+        char encodedData[] = new char[getEncodedLength(binaryData.length, length)];
+        encode(binaryData, 0, binaryData.length, encodedData, 0, length);
 
-        byte k = 0, l = 0, b1 = 0, b2 = 0, b3 = 0;
-        int encodedIndex = 0;
-        int dataIndex = 0;
-        int i = 0;
-
-        for (int line = 0; line < numberLines; line++) {
-            for (int quartet = 0; quartet < 19; quartet++) {
-                b1 = binaryData[dataIndex++];
-                b2 = binaryData[dataIndex++];
-                b3 = binaryData[dataIndex++];
-
-                l  = (byte)(b2 & 0x0f);
-                k  = (byte)(b1 & 0x03);
-
-                byte val1 = ((b1 & SIGN) == 0) ? (byte)(b1 >> 2): (byte)((b1) >> 2 ^ 0xc0);
-
-                byte val2 = ((b2 & SIGN) == 0) ? (byte)(b2 >> 4) : (byte)((b2) >> 4 ^ 0xf0);
-                byte val3 = ((b3 & SIGN) == 0) ? (byte)(b3 >> 6) : (byte)((b3) >> 6 ^ 0xfc);
-
-
-                encodedData[encodedIndex++] = lookUpBase64Alphabet[val1];
-                encodedData[encodedIndex++] = lookUpBase64Alphabet[val2 | (k << 4)];
-                encodedData[encodedIndex++] = lookUpBase64Alphabet[(l << 2) | val3];
-                encodedData[encodedIndex++] = lookUpBase64Alphabet[b3 & 0x3f];
+        return new String(encodedData);
+    }
 
-                i++;
-            }           
-            encodedData[encodedIndex++] = 0xa;           
+    /**
+     * __ADAPTED__
+     * 
+     * Returns the number of characters, the Base64 encoding of 
+     * <code>length</code> bytes consists of.
+     *
+     * @param length the number of bytes to encode
+     * @param lineLength <code>int<code> length of wrapped lines; No wrapping if less than 4.
+     * @return the number of characters including line breaks
+     */
+    public static final int getEncodedLength(int length, int lineLength) {
+        if (length == 0) {
+            return 0;
         }
+        int numberQuartet = (length + 2) / 3;
+        int quartesPerLine = (lineLength < 4) ? Integer.MAX_VALUE : lineLength / 4;
+        int numberLines = (numberQuartet - 1) / quartesPerLine;
 
-        for (; i < numberTriplets; i++) {
-            b1 = binaryData[dataIndex++];
-            b2 = binaryData[dataIndex++];
-            b3 = binaryData[dataIndex++];
-
-            l  = (byte)(b2 & 0x0f);
-            k  = (byte)(b1 & 0x03);
-
-            byte val1 = ((b1 & SIGN) == 0) ? (byte)(b1 >> 2) : (byte)((b1) >> 2 ^ 0xc0);
+        return numberQuartet * 4 + numberLines;
+    }
 
-            byte val2 = ((b2 & SIGN) == 0) ? (byte)(b2 >> 4) : (byte)((b2) >> 4 ^ 0xf0);
-            byte val3 = ((b3 & SIGN) == 0) ? (byte)(b3 >> 6) : (byte)((b3) >> 6 ^ 0xfc);
-    
-    
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val1];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val2 | (k << 4)];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[(l << 2) | val3];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[b3 & 0x3f];
-        }
-
-        // form integral number of 6-bit groups
-        if (fewerThan24bits == EIGHTBIT) {
-            b1 = binaryData[dataIndex];
-            k = (byte) (b1 &0x03);
-            byte val1 = ((b1 & SIGN) == 0) ? (byte)(b1 >> 2):(byte)((b1) >> 2 ^ 0xc0);
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val1];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[k << 4];
-            encodedData[encodedIndex++] = PAD;
-            encodedData[encodedIndex++] = PAD;
-        } else if (fewerThan24bits == SIXTEENBIT) {
-            b1 = binaryData[dataIndex];
-            b2 = binaryData[dataIndex +1 ];
-            l = ( byte ) (b2 & 0x0f);
-            k = ( byte ) (b1 & 0x03);
-
-            byte val1 = ((b1 & SIGN) == 0) ? (byte)(b1 >> 2) : (byte)((b1) >> 2 ^ 0xc0);
-            byte val2 = ((b2 & SIGN) == 0) ? (byte)(b2 >> 4) : (byte)((b2) >> 4 ^ 0xf0);
-    
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val1];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val2 | (k << 4)];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[l << 2];
-            encodedData[encodedIndex++] = PAD;
+    /**
+     * __ADAPTED__
+     * 
+     * Encodes bytes into a character buffer provided by the caller. Lines 
+     * are separated by a line feed, without a trailing line feed.
+     *
+     * @param src the bytes to encode
+     * @param srcOff the offset of the first byte
+     * @param length the number of bytes to encode
+     * @param dst the character buffer; it must provide 
+     *    {@link #getEncodedLength(int, int)} characters from <code>dstOff</code> on
+     * @param dstOff the offset of the first character
+     * @param lineLength <code>int<code> length of wrapped lines; No wrapping if less than 4.
+     * @return the number of characters written
+     */
+    public static final int encode(
+        byte[] src, int srcOff, int length, char[] dst, int dstOff, int lineLength
+    ) {
+        int quartesPerLine = (lineLength < 4) ? Integer.MAX_VALUE : lineLength / 4;
+        char[] alphabet = lookUpBase64Alphabet;
+
+        int srcEnd = srcOff + length - (length % 3);
+        int dstIndex = dstOff;
+        int quartets = 0;
+
+        while (srcOff < srcEnd) {
+            if (quartets == quartesPerLine) {
+                dst[dstIndex++] = '\n';
+                quartets = 0;
+            }
+            int bits = (src[srcOff++] & 0xff) << 16 | (src[srcOff++] & 0xff) << 8 | (src[srcOff++] & 0xff);
+            dst[dstIndex++] = alphabet[bits >>> 18];
+            dst[dstIndex++] = alphabet[(bits >>> 12) & 0x3f];
+            dst[dstIndex++] = alphabet[(bits >>> 6) & 0x3f];
+            dst[dstIndex++] = alphabet[bits & 0x3f];
+            quartets++;
+        }
+
+        int remaining = length % 3;
+        if (remaining > 0) {
+            if (quartets == quartesPerLine) {
+                dst[dstIndex++] = '\n';
+            }
+            int bits = (src[srcOff++] & 0xff) << 16;
+            if (remaining == 2) {
+                bits |= (src[srcOff] & 0xff) << 8;
+            }
+            dst[dstIndex++] = alphabet[bits >>> 18];
+            dst[dstIndex++] = alphabet[(bits >>> 12) & 0x3f];
+            dst[dstIndex++] = (remaining == 2) ? alphabet[(bits >>> 6) & 0x3f] : PAD;
+            dst[dstIndex++] = PAD;
         }
 
-        //encodedData[encodedIndex] = 0xa;
-
-        return new String(encodedData);
+        return dstIndex - dstOff;
     }
 
     /**
@@ -476,9 +476,53 @@ public class Base64 {
         if (encoded == null) {
             return null;
         }
-        byte[] bytes = new byte[encoded.length()];
-        int len = getBytesInternal(encoded, bytes);
-        return decodeInternal(bytes, len);
+        // __ADAPTED__ decode without an intermediate copy of the characters
+        Decoder decoder = new Decoder(new byte[getMaxDecodedLength(encoded.length())], 0);
+        decoder.decode(encoded);
+
+        return trim(decoder.dst, decoder.finish());
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Decodes Base64 characters into a byte buffer provided by the caller;
+     * white space is ignored.
+     *
+     * @param src the Base64 characters
+     * @param srcOff the offset of the first character
+     * @param length the number of characters
+     * @param dst the byte buffer; <code>(length / 4) * 3</code> bytes from 
+     *    <code>dstOff</code> on are always sufficient
+     * @param dstOff the offset of the first byte
+     * @return the number of bytes written
+     * @throws Base64DecodingException if there is a problem decoding the data
+     */
+    public static final int decode(char[] src, int srcOff, int length, byte[] dst, int dstOff) 
+        throws Base64DecodingException {
+        Decoder decoder = new Decoder(dst, dstOff);
+        decoder.decode(src, srcOff, length);
+        return decoder.finish() - dstOff;
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Decodes Base64 characters into a byte buffer provided by the caller;
+     * white space is ignored.
+     *
+     * @param src the Base64 characters
+     * @param dst the byte buffer; <code>(src.length() / 4) * 3</code> bytes 
+     *    from <code>dstOff</code> on are always sufficient
+     * @param dstOff the offset of the first byte
+     * @return the number of bytes written
+     * @throws Base64DecodingException if there is a problem decoding the data
+     */
+    public static final int decode(CharSequence src, byte[] dst, int dstOff) 
+        throws Base64DecodingException {
+        Decoder decoder = new Decoder(dst, dstOff);
+        decoder.decode(src);
+        return decoder.finish() - dstOff;
     }
 
     protected static final int getBytesInternal(String s, byte[] result) {
@@ -791,4 +835,174 @@ public class Base64 {
         }
         return newSize;
     }
+
+    /*
+     * __ADAPTED__
+     * 
+     * The maximum number of bytes, <code>length</code> Base64 characters
+     * (including white space) decode to
+     */
+    private static int getMaxDecodedLength(int length) {
+        return (length / FOURBYTE) * 3;
+    }
+
+    private static byte[] trim(byte[] data, int length) {
+        if (data.length == length) {
+            return data;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(data, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * __ADAPTED__
+     * 
+     * Decodes Base64 characters, that may be supplied in several chunks,
+     * into a byte buffer; the validation rules are the same as those of
+     * {@link #decodeInternal(byte[], int)}.
+     */
+    private static final class Decoder {
+
+        final byte[] dst;
+        private int dstIndex;
+
+        // bits of the current quantum and the number of characters
+        private int bits = 0;
+        private int count = 0;
+        private int pads = 0;
+        private boolean finished = false;
+
+        Decoder(byte[] dst, int dstOff) {
+            this.dst = dst;
+            this.dstIndex = dstOff;
+        }
+
+        void decode(CharSequence src) throws Base64DecodingException {
+            byte[] table = base64Alphabet;
+            int length = src.length();
+            int i = 0;
+            while (i < length) {
+                // complete quanta between white space are decoded at once
+                if (count == 0 && pads == 0) {
+                    int limit = Math.min(length - 3, i + (dst.length - dstIndex) / 3 * 4);
+                    while (i < limit) {
+                        char c1 = src.charAt(i), c2 = src.charAt(i + 1);
+                        char c3 = src.charAt(i + 2), c4 = src.charAt(i + 3);
+                        if ((c1 | c2 | c3 | c4) >= 0x80) {
+                            break;
+                        }
+                        int b1 = table[c1], b2 = table[c2], b3 = table[c3], b4 = table[c4];
+                        if ((b1 | b2 | b3 | b4) < 0) {
+                            break;
+                        }
+                        dst[dstIndex++] = (byte)(b1 << 2 | b2 >> 4);
+                        dst[dstIndex++] = (byte)(b2 << 4 | b3 >> 2);
+                        dst[dstIndex++] = (byte)(b3 << 6 | b4);
+                        i += 4;
+                    }
+                    if (i >= length) {
+                        break;
+                    }
+                }
+                decode(src.charAt(i++));
+            }
+        }
+
+        void decode(char[] src, int srcOff, int length) throws Base64DecodingException {
+            byte[] table = base64Alphabet;
+            int srcEnd = srcOff + length;
+            int i = srcOff;
+            while (i < srcEnd) {
+                // complete quanta between white space are decoded at once
+                if (count == 0 && pads == 0) {
+                    int limit = Math.min(srcEnd - 3, i + (dst.length - dstIndex) / 3 * 4);
+                    while (i < limit) {
+                        char c1 = src[i], c2 = src[i + 1], c3 = src[i + 2], c4 = src[i + 3];
+                        if ((c1 | c2 | c3 | c4) >= 0x80) {
+                            break;
+                        }
+                        int b1 = table[c1], b2 = table[c2], b3 = table[c3], b4 = table[c4];
+                        if ((b1 | b2 | b3 | b4) < 0) {
+                            break;
+                        }
+                        dst[dstIndex++] = (byte)(b1 << 2 | b2 >> 4);
+                        dst[dstIndex++] = (byte)(b2 << 4 | b3 >> 2);
+                        dst[dstIndex++] = (byte)(b3 << 6 | b4);
+                        i += 4;
+                    }
+                    if (i >= srcEnd) {
+                        break;
+                    }
+                }
+                decode(src[i++]);
+            }
+        }
+
+        private void decode(char c) throws Base64DecodingException {
+            byte value = (c < BASELENGTH) ? base64Alphabet[c] : -1;
+            if (value != -1 && pads == 0) {
+                bits = (bits << 6) | value;
+                if (++count == FOURBYTE) {
+                    if (dstIndex + 3 > dst.length) {
+                        throw new Base64DecodingException("decoding.general");
+                    }
+                    dst[dstIndex++] = (byte)(bits >> 16);
+                    dst[dstIndex++] = (byte)(bits >> 8);
+                    dst[dstIndex++] = (byte)bits;
+                    bits = 0;
+                    count = 0;
+                }
+                return;
+            }
+            if (c == 0x20 || c == 0xd || c == 0xa || c == 0x9) {
+                return;
+            }
+            if (c != PAD || finished) {
+                //an error  like "3c[Pad]r", "3cdX", "3cXd", "3cXX" where X is non data
+                throw new Base64DecodingException("decoding.general");
+            }
+            // at least two characters of the last quantum precede padding
+            if (count < 2) {
+                throw new Base64DecodingException("decoding.general");
+            }
+            pads++;
+            if (count + pads == FOURBYTE) {
+                decodeLast();
+            }
+        }
+
+        private void decodeLast() throws Base64DecodingException {
+            if (dstIndex + count - 1 > dst.length) {
+                throw new Base64DecodingException("decoding.general");
+            }
+            if (pads == 2) {
+                //Two PAD e.g. 3c[Pad][Pad]
+                if ((bits & 0xf) != 0) { //last 4 bits should be zero
+                    throw new Base64DecodingException("decoding.general");
+                }
+                dst[dstIndex++] = (byte)(bits >> 4);
+            } else {
+                //One PAD  e.g. 3cQ[Pad]
+                if ((bits & 0x3) != 0) { //last 2 bits should be zero
+                    throw new Base64DecodingException("decoding.general");
+                }
+                dst[dstIndex++] = (byte)(bits >> 10);
+                dst[dstIndex++] = (byte)(bits >> 2);
+            }
+            finished = true;
+        }
+
+        /**
+         * @return the index after the last byte written
+         * @throws Base64DecodingException
+         */
+        int finish() throws Base64DecodingException {
+            if (!finished && (count + pads) != 0) {
+                //should be divisible by four
+                throw new Base64DecodingException("decoding.divisible.four");
+            }
+            return dstIndex;
+        }
+    }
 }
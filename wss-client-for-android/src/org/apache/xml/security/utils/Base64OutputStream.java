@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * __ADAPTED__
+ *
+ * An <code>OutputStream</code> that encodes the bytes written to it in
+ * Base64 and appends the characters to a <code>StringBuilder</code>,
+ * a <code>Writer</code> or any other <code>Appendable</code>. Only a
+ * fixed size character buffer is used, independent of the amount of
+ * data encoded.
+ *
+ * Lines are folded exactly as by {@link Base64#encode(byte[], int)}, i.e.
+ * they are separated by a line feed, without a trailing line feed.
+ * {@link #finish()} (or {@link #close()}) must be called to write the
+ * final, padded quartet; the target itself is never closed.
+ */
+public class Base64OutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final char[] ALPHABET = Base64.lookUpBase64Alphabet;
+
+    private final Appendable target;
+
+    /** number of characters per line, or 0 if lines are not folded */
+    private final int lineLength;
+
+    private final byte[] pending = new byte[3];
+    private int pendingCount = 0;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int count = 0;
+    private int column = 0;
+
+    private boolean finished = false;
+
+    /**
+     * Lines are folded at the standard 76th character unless the ignore
+     * line breaks property is set.
+     *
+     * @param target
+     */
+    public Base64OutputStream(Appendable target) {
+        this(target, XMLUtils.ignoreLineBreaks() ? 0 : Base64.BASE64DEFAULTLENGTH);
+    }
+
+    /**
+     * @param target
+     * @param lineLength length of wrapped lines; no wrapping if less than 4.
+     */
+    public Base64OutputStream(Appendable target, int lineLength) {
+        if (target == null) {
+            throw new NullPointerException("Target unexpectedly null...");
+        }
+        this.target = target;
+        this.lineLength = (lineLength < 4) ? 0 : (lineLength / 4) * 4;
+    }
+
+    public void write(int b) throws IOException {
+        checkFinished();
+        pending[pendingCount++] = (byte) b;
+        if (pendingCount == 3) {
+            encodeQuartet(pending[0], pending[1], pending[2]);
+            pendingCount = 0;
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkFinished();
+        if (pendingCount > 0) {
+            while (pendingCount < 3 && len > 0) {
+                pending[pendingCount++] = b[off++];
+                len--;
+            }
+            if (pendingCount < 3) {
+                return;
+            }
+            encodeQuartet(pending[0], pending[1], pending[2]);
+            pendingCount = 0;
+        }
+        while (len >= 3) {
+            encodeQuartet(b[off], b[off + 1], b[off + 2]);
+            off += 3;
+            len -= 3;
+        }
+        while (len > 0) {
+            pending[pendingCount++] = b[off++];
+            len--;
+        }
+    }
+
+    /**
+     * Writes the buffered characters to the target; bytes, that do not
+     * complete a quartet yet, are retained.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        if (target instanceof Writer) {
+            ((Writer) target).flush();
+        }
+    }
+
+    /**
+     * Encodes the remaining bytes with padding and writes all buffered
+     * characters to the target. No further bytes may be written.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (pendingCount > 0) {
+            startQuartet();
+            int b1 = pending[0] & 0xff;
+            int b2 = (pendingCount > 1) ? pending[1] & 0xff : 0;
+            buffer[count++] = ALPHABET[b1 >> 2];
+            buffer[count++] = ALPHABET[((b1 << 4) | (b2 >> 4)) & 0x3f];
+            buffer[count++] = (pendingCount > 1) ? ALPHABET[(b2 << 2) & 0x3f] : '=';
+            buffer[count++] = '=';
+            pendingCount = 0;
+        }
+        finished = true;
+        flush();
+    }
+
+    /**
+     * Finishes the encoding; the target is not closed.
+     */
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void encodeQuartet(byte x1, byte x2, byte x3) throws IOException {
+        startQuartet();
+        int b1 = x1 & 0xff;
+        int b2 = x2 & 0xff;
+        int b3 = x3 & 0xff;
+        buffer[count++] = ALPHABET[b1 >> 2];
+        buffer[count++] = ALPHABET[((b1 << 4) | (b2 >> 4)) & 0x3f];
+        buffer[count++] = ALPHABET[((b2 << 2) | (b3 >> 6)) & 0x3f];
+        buffer[count++] = ALPHABET[b3 & 0x3f];
+    }
+
+    private void startQuartet() throws IOException {
+        // room for a line feed and a quartet
+        if (count > BUFFER_SIZE - 5) {
+            flushBuffer();
+        }
+        if (lineLength > 0) {
+            if (column == lineLength) {
+                buffer[count++] = '\n';
+                column = 0;
+            }
+            column += 4;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (target instanceof StringBuilder) {
+            ((StringBuilder) target).append(buffer, 0, count);
+        } else if (target instanceof Writer) {
+            ((Writer) target).write(buffer, 0, count);
+        } else {
+            target.append(CharBuffer.wrap(buffer, 0, count));
+        }
+        count = 0;
+    }
+
+    private void checkFinished() throws IOException {
+        if (finished) {
+            throw new IOException("Base64 encoding already finished");
+        }
+    }
+
+}
@@ -383,7 +383,8 @@ public abstract class ElementProxy {
      * @throws XMLSecurityException
      */
     public byte[] getBytesFromTextChild() throws XMLSecurityException {
-        return Base64.decode(XMLUtils.getFullTextChildrenFromElement(this.constructionElement));
+        // __ADAPTED__ decode the text children without joining them
+        return Base64.decode(this.constructionElement);
     }
 
     /**
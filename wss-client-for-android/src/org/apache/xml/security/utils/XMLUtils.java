@@ -28,6 +28,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.c14n.InvalidCanonicalizerException;
@@ -58,6 +63,13 @@ public class XMLUtils {
     private static volatile String dsPrefix = "ds";
     private static volatile String xencPrefix = "xenc";
     private static volatile String xenc11Prefix = "xenc11";
+
+    /** The factory is configured once and shared by all threads */
+    private static DocumentBuilderFactory documentBuilderFactory = null;
+
+    /** Non-validating, namespace aware DocumentBuilders, one per thread */
+    private static ThreadLocal<DocumentBuilder> documentBuilders = 
+        new ThreadLocal<DocumentBuilder>();
     
     /** {@link de.kp.logging} logging facility */
     private static final de.kp.logging.Log log = 
@@ -72,6 +84,68 @@ public class XMLUtils {
         // we don't allow instantiation
     }
     
+    /**
+     * Returns a namespace aware, non-validating DocumentBuilder. The builder is
+     * taken from a per-thread pool and should be handed back via 
+     * {@link #repoolDocumentBuilder(DocumentBuilder)} once parsing is done; 
+     * while borrowed, it is not visible to nested callers on the same thread.
+     * 
+     * @return a DocumentBuilder
+     * @throws ParserConfigurationException
+     */
+    public static DocumentBuilder createDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder db = documentBuilders.get();
+        if (db != null) {
+            documentBuilders.set(null);
+            return db;
+        }
+        // DocumentBuilderFactory is not guaranteed to be thread-safe; this
+        // path is only taken once per thread
+        synchronized (XMLUtils.class) {
+            if (documentBuilderFactory == null) {
+                documentBuilderFactory = newDocumentBuilderFactory();
+            }
+            return documentBuilderFactory.newDocumentBuilder();
+        }
+    }
+
+    /**
+     * Hands a DocumentBuilder obtained from {@link #createDocumentBuilder()}
+     * back to the per-thread pool.
+     * 
+     * @param db the DocumentBuilder
+     */
+    public static void repoolDocumentBuilder(DocumentBuilder db) {
+        if (db == null) {
+            return;
+        }
+        /*
+         * __ADAPTED__ 
+         * 
+         * DocumentBuilder.reset() is not used here, as Android's DocumentBuilderImpl
+         * resets the namespace awareness inherited from the factory; the only state 
+         * a caller may change is the entity resolver and the error handler
+         */
+        db.setEntityResolver(null);
+        db.setErrorHandler(null);
+        documentBuilders.set(db);
+    }
+
+    private static DocumentBuilderFactory newDocumentBuilderFactory() {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        dbf.setValidating(false);
+        try {
+            dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
+        } catch (ParserConfigurationException ex) {
+            // Android's DocumentBuilderFactoryImpl does not support this feature
+            if (log.isDebugEnabled()) {
+                log.debug("Secure processing is not supported by " + dbf.getClass().getName());
+            }
+        }
+        return dbf;
+    }
+
     /**
      * Set the prefix for the digital signature namespace
      * @param prefix the new prefix for the digital signature namespace